@@ -9,6 +9,10 @@ sourceSets.main {
     java.srcDir("src")
 }
 
+sourceSets.test {
+    java.srcDir("test")
+}
+
 application {
     mainClass.set("sc.TestClient")
 }
@@ -27,13 +31,31 @@ tasks {
         content = "java -Dfile.encoding=UTF-8 -Dlogback.configurationFile=logback-tests.xml -jar test-client.jar"
     }
     
+    val createAnalyzerScripts by creating(ScriptsTask::class) {
+        destinationDir = jar.get().destinationDirectory.get().asFile
+        fileName = "analyze-replays"
+        content = "java -Dfile.encoding=UTF-8 -Dlogback.configurationFile=logback-tests.xml -cp test-client.jar sc.ReplayAnalyzerKt"
+    }
+    
+    val createSelfPlayScripts by creating(ScriptsTask::class) {
+        destinationDir = jar.get().destinationDirectory.get().asFile
+        fileName = "self-play"
+        content = "java -Dfile.encoding=UTF-8 -Dlogback.configurationFile=logback-tests.xml -cp test-client.jar sc.InProcessRunnerKt"
+    }
+    
+    val createLoadScripts by creating(ScriptsTask::class) {
+        destinationDir = jar.get().destinationDirectory.get().asFile
+        fileName = "generate-load"
+        content = "java -Dfile.encoding=UTF-8 -Dlogback.configurationFile=logback-tests.xml -cp test-client.jar sc.LoadGeneratorKt"
+    }
+    
     val copyLogbackConfig by creating(Copy::class) {
         from("src/logback-tests.xml")
         into(jar.get().destinationDirectory)
     }
     
     jar {
-        dependsOn(createStartScripts, copyLogbackConfig)
+        dependsOn(createStartScripts, createAnalyzerScripts, createSelfPlayScripts, createLoadScripts, copyLogbackConfig)
         doFirst {
             manifest.attributes(
                     "Class-Path" to configurations.default.get()
@@ -0,0 +1,354 @@
+package sc
+
+import com.thoughtworks.xstream.XStream
+import jargs.gnu.CmdLineParser
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGamePlugin
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.api.plugins.exceptions.GameLogicException
+import sc.api.plugins.host.IGameListener
+import sc.framework.plugins.Player
+import sc.networking.XStreamProvider
+import sc.networking.clients.XStreamClient
+import sc.player.IGameHandler
+import sc.protocol.room.MoveRequest
+import sc.shared.GameResult
+import sc.shared.InvalidMoveException
+import sc.shared.PlayerScore
+import sc.shared.ScoreAggregation
+import sc.shared.ScoreDefinition
+import java.io.File
+import java.math.BigDecimal
+import java.math.MathContext
+import java.net.URLClassLoader
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.system.exitProcess
+
+private val logger = LoggerFactory.getLogger("sc.InProcessRunner")
+
+/** Creates a new [IGameHandler] for every game.
+ * Handlers of concurrent games must therefore not share mutable static state. */
+class HandlerSource(val name: String, private val type: Class<out IGameHandler>) {
+    fun create(): IGameHandler = type.getDeclaredConstructor().newInstance()
+
+    companion object {
+        /** Loads [className] from the classpath or from [jar], e.g. the jar of a player.
+         * Classes of the sdk and the plugin are taken from the classpath first, so handlers and the game share them. */
+        fun load(name: String, className: String, jar: File?): HandlerSource {
+            val parent = HandlerSource::class.java.classLoader
+            val loader = jar?.let { URLClassLoader(arrayOf(it.toURI().toURL()), parent) } ?: parent
+            return HandlerSource(name, Class.forName(className, true, loader).asSubclass(IGameHandler::class.java))
+        }
+    }
+}
+
+/** Plays one game between two handlers on the calling thread, without any networking.
+ * Every state and move passes through XStream, so handlers see exactly what the server would send them.
+ * Like on the server, invalid moves, exceptions and hard timeouts of a handler end the game at its expense.
+ * Moves are calculated on a separate daemon thread, so a handler that hangs can't block the caller.
+ *
+ * @param handlers the handlers in the order of the teams
+ * @param calculator runs the calculations of the handlers, see [newCalculator];
+ * shut down if a handler is still calculating when the game ends, null to use one just for this game
+ */
+class InProcessGame(
+        private val plugin: IGamePlugin,
+        private val handlers: List<IGameHandler>,
+        private val names: List<String>,
+        private val canTimeout: Boolean,
+        private val xStream: XStream = XStreamProvider.sharedPluginXStream,
+        private val calculator: ExecutorService? = null,
+) {
+    fun play(): GameResult {
+        val game = plugin.createGame()
+        // timeouts fire on another thread, their events are processed between the moves like in a room
+        val events = ConcurrentLinkedQueue<Runnable>()
+        game.setEventExecutor { events.add(it) }
+
+        var requested: Player? = null
+        val players = handlers.indices.map { index ->
+            game.onPlayerJoined().also { player ->
+                player.displayName = names[index]
+                player.canTimeout = canTimeout
+                player.addPlayerListener { message -> if(message is MoveRequest) requested = player }
+            }
+        }
+        var result: GameResult? = null
+        game.addGameListener(object: IGameListener {
+            override fun onGameOver(results: Map<Player, PlayerScore>) {
+                result = GameResult(plugin.scoreDefinition, results, game.winner)
+            }
+
+            override fun onStateChanged(data: IGameState, observersOnly: Boolean) {
+                if(observersOnly)
+                    return
+                val xml = xStream.toXML(data)
+                handlers.forEach { it.onUpdate(xStream.fromXML(xml) as IGameState) }
+            }
+        })
+
+        val moves = calculator ?: newCalculator()
+        var calculation: Future<IMove>? = null
+        try {
+            game.start()
+            while(result == null) {
+                val event = events.poll()
+                if(event != null) {
+                    event.run()
+                    continue
+                }
+                val player = requested
+                if(player == null) {
+                    logger.warn("{} did not request a move, stopping it", game)
+                    game.stop()
+                    break
+                }
+                requested = null
+                val handler = handlers[players.indexOf(player)]
+                val pending = moves.submit(Callable { handler.calculateMove() })
+                calculation = pending
+                // while the handler thinks, its timeout may end the game like on the server
+                var move: IMove? = null
+                while(move == null && result == null) {
+                    try {
+                        move = pending.get(POLL_MILLIS, TimeUnit.MILLISECONDS)
+                    } catch(e: TimeoutException) {
+                        generateSequence { events.poll() }.forEach { it.run() }
+                    } catch(e: ExecutionException) {
+                        logger.warn("{} crashed", player.displayName, e.cause)
+                        player.left = XStreamClient.DisconnectCause.LOST_CONNECTION
+                        game.stop()
+                        break
+                    }
+                }
+                if(move == null)
+                    break
+                try {
+                    game.onAction(player, xStream.fromXML(xStream.toXML(move)) as IMove)
+                } catch(e: InvalidMoveException) {
+                    player.violationReason = e.mistake.message
+                    handler.onError("Ungueltiger Zug von '${player.displayName}'.\n$e")
+                    game.stop()
+                } catch(e: GameLogicException) {
+                    player.violationReason = e.message
+                    handler.onError(e.message ?: e.toString())
+                    game.stop()
+                } catch(e: Exception) {
+                    logger.warn("{} crashed", player.displayName, e)
+                    player.left = XStreamClient.DisconnectCause.LOST_CONNECTION
+                    game.stop()
+                }
+            }
+        } finally {
+            // a handler still calculating after its timeout is interrupted and then abandoned
+            if(calculator == null || calculation?.isDone == false)
+                moves.shutdownNow()
+        }
+        val gameResult = result ?: throw IllegalStateException("$game ended without a result")
+        handlers.forEach { it.onGameOver(gameResult) }
+        return gameResult
+    }
+
+    companion object {
+        /** How often pending timeouts are checked while a handler calculates its move. */
+        private const val POLL_MILLIS = 50L
+
+        /** Creates a daemon thread to calculate moves on, which can be reused for further games until shut down. */
+        fun newCalculator(): ExecutorService =
+                Executors.newSingleThreadExecutor { task -> Thread(task, "InProcessGame-Move").apply { isDaemon = true } }
+    }
+}
+
+/** Scores of two handlers over any number of games, added from any thread. */
+class MatchScores(private val names: List<String>, private val sprt: Sprt? = null) {
+    private var definition: ScoreDefinition? = null
+    /** Index of the fragment with the points for winning, which the [sprt] is fed with. */
+    private var winFragment = 0
+    /** Sums of the score fragments by handler. */
+    private val sums = Array(names.size) { arrayOf<BigDecimal>() }
+    var games = 0
+        @Synchronized get
+        private set
+    private var irregular = 0
+    private var failed = 0
+
+    /** @param teams the team index of every handler in this game */
+    @Synchronized
+    fun add(result: GameResult, teams: List<Int>) {
+        if(definition == null) {
+            definition = result.definition
+            // the win points are the only fragment that is summed up, see ScoreDefinition
+            winFragment = result.definition.indexOfFirst { it.aggregation == ScoreAggregation.SUM }.coerceAtLeast(0)
+        }
+        games++
+        if(!result.isRegular)
+            irregular++
+        teams.forEachIndexed { handler, team ->
+            val parts = result.scores.entries.first { it.key.team.index == team }.value.parts
+            sums[handler] = if(sums[handler].isEmpty()) parts.copyOf() else Array(parts.size) { sums[handler][it] + parts[it] }
+            if(handler == 0)
+                sprt?.add(parts[winFragment].toInt())
+        }
+    }
+
+    @Synchronized
+    fun addFailure() {
+        failed++
+    }
+
+    /** Result of the sequential test whether the first handler is stronger, like for the [TestClient].
+     * @return a description of the decision, null if there is none yet */
+    @Synchronized
+    fun decision(): String? = when(sprt?.decision) {
+        Sprt.Decision.H1 -> "${names[0]} is at least ${sprt.elo1} Elo stronger than ${names[1]}! $sprt"
+        Sprt.Decision.H0 -> "${names[0]} is at most ${sprt.elo0} Elo stronger than ${names[1]}! $sprt"
+        null -> null
+    }
+
+    /** The score fragments of both handlers, averaged where the [ScoreDefinition] says so. */
+    @Synchronized
+    override fun toString(): String = buildString {
+        val fragments = definition?.toList().orEmpty()
+        append("=============== SCORES ================\n")
+        names.forEachIndexed { handler, name ->
+            append(name).append(": ")
+            append(fragments.mapIndexed { index, fragment ->
+                val sum = sums[handler].getOrNull(index) ?: BigDecimal.ZERO
+                val value = if(fragment.aggregation == ScoreAggregation.AVERAGE && games > 0) sum.divide(BigDecimal(games), MathContext.DECIMAL64) else sum
+                "%s%s %.2f".format(if(fragment.aggregation == ScoreAggregation.AVERAGE) "∅" else "", fragment.name, value)
+            }.joinToString(", "))
+            append('\n')
+        }
+        append("=======================================\n")
+        append("$irregular of $games games ended abnormally, $failed failed")
+        sprt?.let { append("\nSPRT: ").append(it) }
+    }
+}
+
+/** Plays games between two [HandlerSource]s concurrently, alternating which one starts.
+ * Stops starting new games once the [sprt] decides, if given. */
+class InProcessRunner(
+        private val plugin: IGamePlugin,
+        private val sources: List<HandlerSource>,
+        private val threads: Int,
+        private val canTimeout: Boolean = true,
+        sprt: Sprt? = null,
+        private val minTests: Int = 20,
+) {
+    val scores = MatchScores(sources.map { it.name }, sprt)
+
+    /** Calculator of every worker, replaced when a game abandons it, see [InProcessGame.calculator]. */
+    private val calculators = ConcurrentLinkedQueue<ExecutorService>()
+    private val workerCalculator = ThreadLocal<ExecutorService>()
+
+    private fun calculator(): ExecutorService =
+            workerCalculator.get()?.takeUnless { it.isShutdown }
+            ?: InProcessGame.newCalculator().also { workerCalculator.set(it); calculators.add(it) }
+
+    fun run(games: Int) {
+        val executor = Executors.newFixedThreadPool(threads)
+        val decided = AtomicBoolean(false)
+        try {
+            repeat(games) { index ->
+                executor.execute {
+                    if(decided.get())
+                        return@execute
+                    // like the TestClient, the handlers take turns at starting
+                    val teams = sources.indices.map { (index + it) % sources.size }
+                    val order = sources.indices.sortedBy { teams[it] }
+                    try {
+                        val result = InProcessGame(plugin, order.map { sources[it].create() }, order.map { sources[it].name }, canTimeout,
+                                calculator = calculator()).play()
+                        scores.add(result, teams)
+                        logger.info("Game {} ended {} Winner: {}", index + 1, if(result.isRegular) "regularly -" else "abnormally!", result.winner)
+                    } catch(e: Exception) {
+                        logger.error("Game {} failed", index + 1, e)
+                        scores.addFailure()
+                    }
+                    if(scores.games >= minTests)
+                        scores.decision()?.let {
+                            if(!decided.getAndSet(true))
+                                logger.warn(it)
+                        }
+                }
+            }
+        } finally {
+            executor.shutdown()
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS)
+            calculators.forEach { it.shutdownNow() }
+            calculators.clear()
+        }
+    }
+}
+
+/**
+ * Plays two [IGameHandler]s against each other within this JVM, without server or sockets.
+ *
+ * Options: `--player1 CLASS` and `--player2 CLASS` name the handlers, default `sc.player.Logic`,
+ * optionally loaded from `--jar1 FILE` and `--jar2 FILE`.
+ * Further `--name1`, `--name2`, `--tests N`, `--threads N`, `--no-timeout`,
+ * `--elo0 E`, `--elo1 E`, `--alpha P`, `--beta P`, `--significance P` and `--min-tests N` like for the TestClient.
+ */
+fun main(args: Array<String>) {
+    val parser = CmdLineParser()
+    val classOptions = arrayOf(parser.addStringOption("player1"), parser.addStringOption("player2"))
+    val jarOptions = arrayOf(parser.addStringOption("jar1"), parser.addStringOption("jar2"))
+    val nameOptions = arrayOf(parser.addStringOption("name1"), parser.addStringOption("name2"))
+    val testsOption = parser.addIntegerOption('t', "tests")
+    val threadsOption = parser.addIntegerOption('j', "threads")
+    val noTimeoutOption = parser.addBooleanOption("no-timeout")
+    val significanceOption = parser.addDoubleOption("significance")
+    val elo0Option = parser.addDoubleOption("elo0")
+    val elo1Option = parser.addDoubleOption("elo1")
+    val alphaOption = parser.addDoubleOption("alpha")
+    val betaOption = parser.addDoubleOption("beta")
+    val minTestsOption = parser.addIntegerOption("min-tests")
+    try {
+        parser.parse(args)
+    } catch(e: CmdLineParser.OptionException) {
+        System.err.println(e.message)
+        System.err.println("Usage: InProcessRunner --player1 CLASS --jar1 FILE --player2 CLASS --jar2 FILE --tests N --threads N")
+        exitProcess(2)
+    }
+
+    val tests = parser.getOptionValue(testsOption, 100) as Int
+    val sprt = try {
+        val (significance, elo0, elo1, alpha, beta) = listOf(significanceOption, elo0Option, elo1Option, alphaOption, betaOption)
+                .map { parser.getOptionValue(it) as Double? }
+        Sprt.fromOptions(significance, elo0, elo1, alpha, beta)
+    } catch(e: IllegalArgumentException) {
+        logger.error("Invalid sequential test options: {}", e.message)
+        exitProcess(2)
+    }
+    val names = nameOptions.mapIndexed { index, option -> parser.getOptionValue(option, "player${index + 1}") as String }
+            .let { if(it[0] == it[1]) listOf(it[0] + "-1", it[1] + "-2") else it }
+    val sources = try {
+        names.mapIndexed { index, name ->
+            HandlerSource.load(name,
+                    parser.getOptionValue(classOptions[index], "sc.player.Logic") as String,
+                    (parser.getOptionValue(jarOptions[index]) as String?)?.let { File(it) })
+        }
+    } catch(e: Exception) {
+        logger.error("Could not load the handlers", e)
+        exitProcess(2)
+    }
+    val threads = parser.getOptionValue(threadsOption, Runtime.getRuntime().availableProcessors()) as Int
+    val runner = InProcessRunner(IGamePlugin.loadPlugin(), sources, threads,
+            !(parser.getOptionValue(noTimeoutOption, false) as Boolean),
+            sprt, parser.getOptionValue(minTestsOption, 20) as Int)
+
+    val start = System.nanoTime()
+    runner.run(tests)
+    val seconds = (System.nanoTime() - start) / 1e9
+    logger.warn("\n{}", runner.scores)
+    System.err.println("Played %d games in %.1fs (%.1f games/s) using %d threads".format(runner.scores.games, seconds, runner.scores.games / seconds, threads))
+}
@@ -0,0 +1,317 @@
+package sc
+
+import jargs.gnu.CmdLineParser
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGamePlugin
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.api.plugins.TwoPlayerGameState
+import sc.networking.clients.AbstractLobbyClientListener
+import sc.networking.clients.AdminClient
+import sc.networking.clients.LobbyClient
+import sc.player.IGameHandler
+import sc.protocol.ResponsePacket
+import sc.protocol.requests.PrepareGameRequest
+import sc.protocol.responses.ErrorPacket
+import sc.protocol.responses.GamePreparedResponse
+import sc.shared.GameResult
+import sc.shared.SharedConfiguration
+import sc.shared.SlotDescriptor
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.roundToInt
+import kotlin.random.Random
+import kotlin.system.exitProcess
+
+private val logger = LoggerFactory.getLogger("sc.LoadGenerator")
+
+/** Latencies in nanoseconds, recorded from any thread. */
+class LatencyRecorder {
+    private var values = LongArray(1024)
+    var count = 0
+        @Synchronized get
+        private set
+
+    @Synchronized
+    fun record(nanos: Long) {
+        if(count == values.size)
+            values = values.copyOf(count * 2)
+        values[count++] = nanos
+    }
+
+    /** @return for each of [percents] the latency which that share of the recorded latencies doesn't exceed, 0 if none were recorded */
+    @Synchronized
+    fun percentiles(vararg percents: Double): List<Long> {
+        val sorted = values.copyOf(count).apply { sort() }
+        return percents.map { percent -> if(count == 0) 0 else sorted[((count - 1) * percent / 100).roundToInt()] }
+    }
+}
+
+/** What a [LoadGenerator] measured so far. */
+class LoadStats {
+    val startedAt = System.nanoTime()
+    /** Time from sending a move until receiving the state it led to. */
+    val latencies = LatencyRecorder()
+    val games = AtomicInteger()
+    val irregularGames = AtomicInteger()
+    /** Error messages and packets, failed preparations and hanging games. */
+    val errors = AtomicInteger()
+
+    override fun toString(): String {
+        val seconds = (System.nanoTime() - startedAt) / 1e9
+        val moves = latencies.count
+        val (p50, p90, p99, max) = latencies.percentiles(50.0, 90.0, 99.0, 100.0).map { it / 1e6 }
+        return "%d games in %.1fs (%.2f games/s, %d irregular), %d moves (%.1f moves/s), latency p50 %.1fms p90 %.1fms p99 %.1fms max %.1fms, %d errors".format(
+                games.get(), seconds, games.get() / seconds, irregularGames.get(), moves, moves / seconds, p50, p90, p99, max, errors.get())
+    }
+}
+
+/** A game of the [LoadGenerator] between two [Bot]s. */
+private class LoadGame(val number: Int, val bots: List<Bot>) {
+    var startedAt = System.nanoTime()
+    /** Number of bots which received the result. */
+    var finished = 0
+}
+
+/** A player connection which answers every move request with a random sensible move after [thinkTime] milliseconds.
+ * It stays connected, so it can play one game after another. */
+private class Bot(
+        val client: LobbyClient,
+        private val thinkTime: Long,
+        private val stats: LoadStats,
+        private val onGameOver: (Bot, GameResult) -> Unit,
+): IGameHandler {
+    val player = client.asPlayer(this, true)
+    private var state: TwoPlayerGameState<*>? = null
+    /** When the last move was sent, 0 if its state was received. */
+    private var movedAt = 0L
+
+    init {
+        client.addListener(object: AbstractLobbyClientListener() {
+            override fun onError(error: ErrorPacket) {
+                logger.warn("Bot error: {}", error.message)
+                stats.errors.incrementAndGet()
+            }
+        })
+    }
+
+    override fun calculateMove(): IMove {
+        if(thinkTime > 0)
+            Thread.sleep(thinkTime)
+        val move = state!!.getSensibleMoves().random(Random)
+        movedAt = System.nanoTime()
+        return move
+    }
+
+    override fun onUpdate(gameState: IGameState) {
+        if(movedAt != 0L) {
+            stats.latencies.record(System.nanoTime() - movedAt)
+            movedAt = 0L
+        }
+        state = gameState as TwoPlayerGameState<*>
+    }
+
+    override fun onGameOver(data: GameResult) {
+        movedAt = 0L
+        onGameOver(this, data)
+    }
+
+    override fun onError(error: String) {
+        logger.warn("Bot error: {}", error)
+        stats.errors.incrementAndGet()
+    }
+}
+
+/** Puts load on a running server by keeping [rooms] games of [bots] player connections running until [games] ended.
+ *
+ * Rooms are prepared with a [PrepareGameRequest] as an administrator, each taking two idle bots.
+ * Thus at most half of the bots play at the same time. */
+class LoadGenerator(
+        private val host: String,
+        private val port: Int,
+        password: String,
+        private val rooms: Int,
+        bots: Int,
+        private val games: Int,
+        private val thinkTime: Long = 0,
+        private val canTimeout: Boolean = true,
+) {
+    private val plugin = IGamePlugin.loadPlugin()
+    val stats = LoadStats()
+
+    /** Bots without a game, guarded by this. */
+    private val idle = ArrayDeque<Bot>()
+    /** Games waiting for their [GamePreparedResponse], which arrive in the order of the requests, guarded by this. */
+    private val preparing = ArrayDeque<LoadGame>()
+    private val running = ConcurrentHashMap<Bot, LoadGame>()
+    private var started = 0
+    private var ended = 0
+    private val done = CountDownLatch(1)
+
+    private val lobby = LobbyClient(host, port)
+    private val admin: AdminClient = lobby.authenticate(password, ::onResponse)
+
+    /** Detects hanging games and reports intermediate results. */
+    private val monitor = Executors.newSingleThreadScheduledExecutor()
+
+    init {
+        require(bots >= 2 * rooms) { "$rooms rooms need at least ${2 * rooms} bots" }
+        repeat(bots) { idle.add(newBot()) }
+    }
+
+    /** Plays all games and logs the stats every [reportInterval] seconds. */
+    fun run(reportInterval: Long) {
+        monitor.scheduleWithFixedDelay(::checkGames, 1, 1, TimeUnit.SECONDS)
+        monitor.scheduleAtFixedRate({ logger.info("{}", stats) }, reportInterval, reportInterval, TimeUnit.SECONDS)
+        startGames()
+        try {
+            done.await()
+        } finally {
+            monitor.shutdownNow()
+            synchronized(this) { idle + running.keys }.forEach { it.client.stop() }
+            lobby.stop()
+        }
+    }
+
+    private fun newBot() =
+            Bot(LobbyClient(host, port), thinkTime, stats, ::onGameOver)
+
+    /** Prepares games until [rooms] are running or all [games] have been started. */
+    @Synchronized
+    private fun startGames() {
+        while(started < games && preparing.size + running.values.toSet().size < rooms && idle.size >= 2) {
+            val game = LoadGame(started++, listOf(idle.removeFirst(), idle.removeFirst()))
+            preparing.add(game)
+            admin.prepareGame(PrepareGameRequest(plugin.id,
+                    SlotDescriptor("bot${game.number}a", canTimeout),
+                    SlotDescriptor("bot${game.number}b", canTimeout),
+                    false))
+        }
+    }
+
+    private fun onResponse(response: ResponsePacket) {
+        when(response) {
+            is GamePreparedResponse -> {
+                val game = synchronized(this) {
+                    preparing.removeFirstOrNull()?.also { game -> game.bots.forEach { running[it] = game } }
+                } ?: return logger.warn("Unexpected prepared room {}", response.roomId)
+                game.startedAt = System.nanoTime()
+                game.bots.forEachIndexed { index, bot -> bot.player.joinGameWithReservation(response.reservations[index]) }
+            }
+            is ErrorPacket -> {
+                logger.warn("Server error: {}", response.message)
+                stats.errors.incrementAndGet()
+                if(response.originalRequest is PrepareGameRequest)
+                    synchronized(this) {
+                        preparing.removeFirstOrNull()?.let { game ->
+                            idle.addAll(game.bots)
+                            ended++
+                        }
+                    }
+                next()
+            }
+        }
+    }
+
+    private fun onGameOver(bot: Bot, result: GameResult) {
+        synchronized(this) {
+            val game = running.remove(bot) ?: return
+            idle.add(bot)
+            if(++game.finished < game.bots.size)
+                return
+            stats.games.incrementAndGet()
+            if(!result.isRegular)
+                stats.irregularGames.incrementAndGet()
+            ended++
+        }
+        next()
+    }
+
+    /** Ends games which exceed the timeout of the plugin, replacing their bots by new connections. */
+    private fun checkGames() {
+        val hanging = running.values.distinct().filter {
+            TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - it.startedAt) > plugin.gameTimeout
+        }
+        if(hanging.isEmpty())
+            return
+        synchronized(this) {
+            hanging.forEach { game ->
+                // the game may have ended since it was found
+                val stuck = game.bots.filter { running.remove(it) != null }
+                if(stuck.isEmpty())
+                    return@forEach
+                logger.warn("Game {} seems to hang, abandoning it", game.number + 1)
+                stats.errors.incrementAndGet()
+                stuck.forEach { bot ->
+                    bot.client.stop()
+                    try {
+                        idle.add(newBot())
+                    } catch(e: Exception) {
+                        logger.error("Could not replace bot", e)
+                    }
+                }
+                ended++
+            }
+        }
+        next()
+    }
+
+    private fun next() {
+        if(synchronized(this) { ended >= games })
+            done.countDown()
+        else
+            startGames()
+    }
+}
+
+/**
+ * Measures how much load a running server sustains by playing random moves over many connections.
+ *
+ * Options: `--host HOST` and `--port PORT` of the server, default localhost and its default port,
+ * `--password PASSWORD` of the administrator, by default from the server properties,
+ * `--rooms K` concurrent games, `--bots M` player connections (at least 2K),
+ * `--games N` to play in total, `--think-time MS` before each move, `--no-timeout`
+ * and `--report-interval S` between intermediate reports.
+ */
+fun main(args: Array<String>) {
+    val parser = CmdLineParser()
+    val hostOption = parser.addStringOption('h', "host")
+    val portOption = parser.addIntegerOption('p', "port")
+    val passwordOption = parser.addStringOption("password")
+    val roomsOption = parser.addIntegerOption('k', "rooms")
+    val botsOption = parser.addIntegerOption('m', "bots")
+    val gamesOption = parser.addIntegerOption('t', "games")
+    val thinkTimeOption = parser.addIntegerOption("think-time")
+    val noTimeoutOption = parser.addBooleanOption("no-timeout")
+    val reportIntervalOption = parser.addIntegerOption("report-interval")
+    try {
+        parser.parse(args)
+    } catch(e: CmdLineParser.OptionException) {
+        System.err.println(e.message)
+        System.err.println("Usage: LoadGenerator --port PORT --rooms K --bots M --games N --think-time MS")
+        exitProcess(2)
+    }
+
+    sc.server.Configuration.loadServerProperties()
+    val rooms = parser.getOptionValue(roomsOption, 10) as Int
+    val generator = try {
+        LoadGenerator(
+                parser.getOptionValue(hostOption, "localhost") as String,
+                parser.getOptionValue(portOption, SharedConfiguration.DEFAULT_PORT) as Int,
+                parser.getOptionValue(passwordOption, sc.server.Configuration.getAdministrativePassword()) as String,
+                rooms,
+                parser.getOptionValue(botsOption, 2 * rooms) as Int,
+                parser.getOptionValue(gamesOption, 100) as Int,
+                (parser.getOptionValue(thinkTimeOption, 0) as Int).toLong(),
+                !(parser.getOptionValue(noTimeoutOption, false) as Boolean))
+    } catch(e: Exception) {
+        logger.error("Could not start the load generator", e)
+        exitProcess(2)
+    }
+    generator.run((parser.getOptionValue(reportIntervalOption, 5) as Int).toLong())
+    logger.warn("\n=============== LOAD ================\n{}", generator.stats)
+    exitProcess(if(generator.stats.errors.get() > 0) 1 else 0)
+}
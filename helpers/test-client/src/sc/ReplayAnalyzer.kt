@@ -0,0 +1,272 @@
+package sc
+
+import jargs.gnu.CmdLineParser
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGamePlugin
+import sc.api.plugins.IGameState
+import sc.api.plugins.Team
+import sc.framework.ReplayIndex
+import sc.framework.ReplayReader
+import sc.framework.plugins.AbstractGame
+import sc.shared.GameResult
+import sc.shared.ScoreDefinition
+import java.io.File
+import java.io.PrintStream
+import java.math.BigDecimal
+import java.math.MathContext
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import kotlin.system.exitProcess
+
+private val logger = LoggerFactory.getLogger("sc.ReplayAnalyzer")
+
+/** What is kept of a replay after reading it. */
+data class ReplaySummary(
+        val file: Path,
+        /** Turn of the last state. */
+        val turns: Int?,
+        val result: GameResult?,
+        /** Reason of the regular end of the game, determined from the last state by its plugin. */
+        val winReason: String?,
+) {
+    /** One row of the per-replay output. */
+    fun toMap(): Map<String, Any?> = LinkedHashMap<String, Any?>().apply {
+        put("file", file)
+        put("turns", turns)
+        put("winner", result?.let { it.winner ?: "draw" })
+        put("winReason", winReason)
+        result?.scores?.forEach { (player, score) ->
+            put("${player.team}.cause", score.cause)
+            score.parts.forEachIndexed { index, part -> put("${player.team}.${result.definition[index].name}", part) }
+        }
+    }
+
+    companion object {
+        /** Keys of [toMap] for games with the given [definition], so rows of replays without a result line up. */
+        fun columns(definition: ScoreDefinition): List<String> =
+                listOf("file", "turns", "winner", "winReason") +
+                Team.values().flatMap { team -> listOf("$team.cause") + definition.map { "$team.${it.name}" } }
+    }
+}
+
+/** Aggregates [ReplaySummary]s of any number of threads. */
+class ReplayStatistics {
+    private var replays = 0
+    private var failed = 0
+    private var turnCount = 0
+    private var turnSum = 0L
+    private var minTurns = Int.MAX_VALUE
+    private var maxTurns = Int.MIN_VALUE
+    private val winners = sortedMapOf<String, Int>()
+    private val causes = sortedMapOf<String, Int>()
+    private val winReasons = sortedMapOf<String, Int>()
+    /** Sum of every score fragment and number of scores per team. */
+    private val points = sortedMapOf<String, MutableMap<String, BigDecimal>>()
+    private val scoreCounts = sortedMapOf<String, Int>()
+
+    @Synchronized
+    fun add(summary: ReplaySummary) {
+        replays++
+        summary.turns?.let { turns ->
+            turnCount++
+            turnSum += turns
+            minTurns = minOf(minTurns, turns)
+            maxTurns = maxOf(maxTurns, turns)
+        }
+        summary.winReason?.let { winReasons.increment(it) }
+        val result = summary.result ?: return
+        winners.increment(result.winner?.toString() ?: "draw")
+        result.scores.forEach { (player, score) ->
+            val team = player.team.toString()
+            causes.increment(score.cause.toString())
+            scoreCounts.increment(team)
+            val sums = points.getOrPut(team) { LinkedHashMap() }
+            score.parts.forEachIndexed { index, part ->
+                sums.merge(result.definition[index].name, part, BigDecimal::add)
+            }
+        }
+    }
+
+    @Synchronized
+    fun addFailure() {
+        failed++
+    }
+
+    val count: Int
+        @Synchronized get() = replays + failed
+
+    /** The statistics as nested maps, rendered by [toCsv] and [toJson]. */
+    @Synchronized
+    fun toMap(): Map<String, Any?> = linkedMapOf(
+            "replays" to replays,
+            "failed" to failed,
+            "turns" to if(turnCount == 0) null else linkedMapOf(
+                    "min" to minTurns,
+                    "max" to maxTurns,
+                    "average" to turnSum.toDouble() / turnCount),
+            "winners" to LinkedHashMap(winners),
+            "winRates" to winners.mapValues { it.value.toDouble() / replays },
+            "averagePoints" to points.mapValues { (team, sums) ->
+                sums.mapValues { it.value.divide(BigDecimal(scoreCounts.getValue(team)), MathContext.DECIMAL64) }
+            },
+            "causes" to LinkedHashMap(causes),
+            "winReasons" to LinkedHashMap(winReasons),
+    )
+
+    private fun MutableMap<String, Int>.increment(key: String) =
+            merge(key, 1, Int::plus)
+}
+
+/** Reads replays in parallel, keeping only a [ReplaySummary] of each.
+ * At most a few replays per thread are queued, so memory does not grow with the number of replays. */
+class ReplayAnalyzer(private val threads: Int, private val onReplay: (ReplaySummary) -> Unit = {}) {
+    val statistics = ReplayStatistics()
+
+    private val plugins = IGamePlugin.loadPlugins().asSequence().toList()
+
+    /** Analyzes the given replay files and all replays in the given directories. */
+    fun analyze(paths: Collection<Path>) {
+        val executor = Executors.newFixedThreadPool(threads)
+        val queued = Semaphore(threads * 4)
+        try {
+            paths.forEach { root ->
+                Files.walk(root).use { files ->
+                    files.filter { Files.isRegularFile(it) && isReplay(it) }.forEach { file ->
+                        queued.acquire()
+                        executor.execute {
+                            try {
+                                val summary = summarize(file)
+                                statistics.add(summary)
+                                onReplay(summary)
+                            } catch(e: Exception) {
+                                logger.warn("Failed to analyze {}: {}", file, e.toString())
+                                statistics.addFailure()
+                            } finally {
+                                queued.release()
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            executor.shutdown()
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS)
+        }
+    }
+
+    fun summarize(file: Path): ReplaySummary =
+            ReplayReader(file.toFile()).use { reader ->
+                // only the last state is kept
+                var last: IGameState? = null
+                reader.forEach { last = it }
+                ReplaySummary(file, last?.turn, reader.result, last?.let { winReason(it) })
+            }
+
+    private fun winReason(state: IGameState): String? =
+            plugins.firstNotNullOfOrNull { plugin -> runCatching { plugin.createGameFromState(state) }.getOrNull() }
+                    .let { it as? AbstractGame }
+                    ?.checkWinCondition()?.reason?.toString()
+
+    companion object {
+        fun isReplay(file: Path) =
+                file.fileName.toString().let { !it.endsWith(ReplayIndex.SUFFIX) && (it.endsWith(".xml") || it.endsWith(".xml.gz")) }
+    }
+}
+
+/** Flattens nested maps into `key,value` lines, joining nested keys with dots. */
+fun toCsv(values: Map<String, Any?>): String =
+        buildString {
+            fun append(prefix: String, value: Any?) {
+                if(value is Map<*, *>)
+                    value.forEach { (key, nested) -> append(if(prefix.isEmpty()) "$key" else "$prefix.$key", nested) }
+                else
+                    append(csvField(prefix)).append(',').append(csvField(value?.toString() ?: "")).append('\n')
+            }
+            append("statistic,value\n")
+            append("", values)
+        }
+
+fun toJson(value: Any?): String =
+        when(value) {
+            null -> "null"
+            is Map<*, *> -> value.entries.joinToString(",", "{", "}") { "${toJson(it.key.toString())}:${toJson(it.value)}" }
+            is Number, is Boolean -> value.toString()
+            else -> buildString {
+                append('"')
+                value.toString().forEach { char ->
+                    when(char) {
+                        '\\', '"' -> append('\\').append(char)
+                        '\n' -> append("\\n")
+                        '\r' -> append("\\r")
+                        '\t' -> append("\\t")
+                        else -> if(char < ' ') append("\\u%04x".format(char.code)) else append(char)
+                    }
+                }
+                append('"')
+            }
+        }
+
+private fun csvField(value: String) =
+        if(value.any { it == ',' || it == '"' || it == '\n' || it == '\r' }) "\"${value.replace("\"", "\"\"")}\"" else value
+
+/**
+ * Aggregates the results of saved replays.
+ *
+ * Options: `--threads N`, `--format csv|json`, `--output FILE` and `--rows FILE`, followed by any number of paths.
+ * Paths can be replay files or directories, which are searched recursively; the default is `replays`.
+ * `--rows` additionally writes one line per replay to the given file while the replays are read.
+ */
+fun main(args: Array<String>) {
+    val parser = CmdLineParser()
+    val threadsOption = parser.addIntegerOption('j', "threads")
+    val formatOption = parser.addStringOption('f', "format")
+    val outputOption = parser.addStringOption('o', "output")
+    val rowsOption = parser.addStringOption("rows")
+    try {
+        parser.parse(args)
+    } catch(e: CmdLineParser.OptionException) {
+        System.err.println(e.message)
+        System.err.println("Usage: ReplayAnalyzer [--threads N] [--format csv|json] [--output FILE] [--rows FILE] [PATH...]")
+        exitProcess(2)
+    }
+    val threads = parser.getOptionValue(threadsOption, Runtime.getRuntime().availableProcessors()) as Int
+    val json = when(val format = parser.getOptionValue(formatOption, "csv") as String) {
+        "csv" -> false
+        "json" -> true
+        else -> {
+            System.err.println("Unknown format $format, use csv or json")
+            exitProcess(2)
+        }
+    }
+    val paths = parser.remainingArgs.ifEmpty { arrayOf("replays") }.map { Paths.get(it) }
+
+    val rows = (parser.getOptionValue(rowsOption) as String?)?.let { PrintStream(File(it), "UTF-8") }
+    val columns = ReplaySummary.columns(IGamePlugin.loadPlugin().scoreDefinition)
+    if(rows != null && !json)
+        rows.println(columns.joinToString(",") { csvField(it) })
+    val analyzer = ReplayAnalyzer(threads) { summary ->
+        if(rows != null) synchronized(rows) {
+            val row = summary.toMap()
+            if(json) {
+                rows.println(toJson(row))
+            } else {
+                rows.println(columns.joinToString(",") { csvField(row[it]?.toString() ?: "") })
+            }
+        }
+    }
+
+    val start = System.nanoTime()
+    analyzer.analyze(paths)
+    val seconds = (System.nanoTime() - start) / 1e9
+    rows?.close()
+
+    val count = analyzer.statistics.count
+    val statistics = analyzer.statistics.toMap() + mapOf("seconds" to seconds, "replaysPerSecond" to count / seconds)
+    val output = if(json) toJson(statistics) + "\n" else toCsv(statistics)
+    (parser.getOptionValue(outputOption) as String?)?.let { File(it).writeText(output) } ?: print(output)
+    System.err.println("Analyzed %d replays in %.1fs (%.0f replays/s) using %d threads".format(count, seconds, count / seconds, threads))
+}
@@ -0,0 +1,99 @@
+package sc
+
+import sc.framework.plugins.Constants
+import kotlin.math.ln
+import kotlin.math.pow
+
+/** Sequential probability ratio test whether player one is at least [elo1] rather than at most [elo0] Elo stronger than player two.
+ *
+ * Uses the generalized SPRT with a normal approximation of the game outcomes, so draws count as half a win.
+ * Results are added one game at a time in constant time and the test can stop after any of them,
+ * wrongly deciding for [elo1] with probability [alpha] and for [elo0] with probability [beta].
+ * Not thread-safe. */
+class Sprt @JvmOverloads constructor(
+        val elo0: Double = 0.0,
+        val elo1: Double = 30.0,
+        val alpha: Double = 0.05,
+        val beta: Double = 0.05,
+) {
+    enum class Decision {
+        /** Player one is at most [elo0] Elo stronger. */
+        H0,
+        /** Player one is at least [elo1] Elo stronger. */
+        H1,
+    }
+
+    init {
+        require(elo1 > elo0) { "elo1 has to be greater than elo0" }
+        require(alpha > 0 && alpha < 1 && beta > 0 && beta < 1) { "alpha and beta have to be between 0 and 1" }
+    }
+
+    var wins = 0
+        private set
+    var draws = 0
+        private set
+    var losses = 0
+        private set
+
+    val games: Int
+        get() = wins + draws + losses
+
+    val lowerBound = ln(beta / (1 - alpha))
+    val upperBound = ln((1 - beta) / alpha)
+
+    private val score0 = expectedScore(elo0)
+    private val score1 = expectedScore(elo1)
+
+    /** Adds a game by the points player one got for it. */
+    fun add(points: Int) {
+        when {
+            points >= Constants.WIN_SCORE -> wins++
+            points == Constants.DRAW_SCORE -> draws++
+            else -> losses++
+        }
+    }
+
+    /** Log-likelihood ratio of [Decision.H1] against [Decision.H0] after the added games. */
+    val llr: Double
+        get() {
+            val n = games.toDouble()
+            if(n == 0.0)
+                return 0.0
+            val score = (wins + draws / 2.0) / n
+            // a pseudo win and loss keep the variance from vanishing if all games ended alike,
+            // so that e.g. only wins still lead to a decision
+            val variance = (wins * (1 - score).pow(2) + draws * (0.5 - score).pow(2) + losses * score.pow(2) +
+                            (1 - score).pow(2) + score.pow(2)) / (n + 2)
+            return n * (score1 - score0) * (2 * score - score0 - score1) / (2 * variance)
+        }
+
+    /** @return the accepted hypothesis, null if more games are needed */
+    val decision: Decision?
+        get() = llr.let { llr ->
+            when {
+                llr >= upperBound -> Decision.H1
+                llr <= lowerBound -> Decision.H0
+                else -> null
+            }
+        }
+
+    override fun toString() =
+            "LLR %.2f (%.2f, %.2f) for elo0=%.1f elo1=%.1f after %d games (+%d =%d -%d)".format(
+                    llr, lowerBound, upperBound, elo0, elo1, games, wins, draws, losses)
+
+    companion object {
+        /** Creates the test from the command line options, null if none of them is given.
+         * @param significance shorthand for the same [alpha] and [beta] */
+        @JvmStatic
+        fun fromOptions(significance: Double?, elo0: Double?, elo1: Double?, alpha: Double?, beta: Double?): Sprt? {
+            if(listOf(significance, elo0, elo1, alpha, beta).all { it == null })
+                return null
+            val default = Sprt()
+            return Sprt(elo0 ?: default.elo0, elo1 ?: default.elo1,
+                    alpha ?: significance ?: default.alpha, beta ?: significance ?: default.beta)
+        }
+
+        /** Expected score per game of a player [elo] Elo stronger than the opponent. */
+        fun expectedScore(elo: Double) = 1 / (1 + 10.0.pow(-elo / 400))
+    }
+}
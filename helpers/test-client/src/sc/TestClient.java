@@ -20,20 +20,20 @@ import sc.shared.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.StringTokenizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.function.IntToDoubleFunction;
 import java.util.stream.Collectors;
-
-import static java.lang.Math.pow;
-import static sc.Util.factorial;
+import java.util.stream.IntStream;
 
 /**
  * A simple command-line application to test clients. Enables TestMode on startup.
@@ -44,6 +44,12 @@ import static sc.Util.factorial;
  * <li>displayNames: player1, player2</li>
  * <li>client location: ./defaultplayer.jar</li>
  * <li>canTimeout: true</li>
+ * <li>one game at a time, {@code --parallel N} keeps N games running with separate player processes</li>
+ * <li>a new process per player and game, with {@code --reuse-players} the processes of a lane
+ * get the reservations of its games on their standard input (see {@code Starter --keep-alive})
+ * and are only restarted when they crash</li>
+ * <li>all tests are played, {@code --elo0}, {@code --elo1}, {@code --alpha} and {@code --beta}
+ * or {@code --significance P} for both error rates stop once a {@link Sprt} decides</li>
  * </ul>
  */
 public class TestClient extends XStreamClient {
@@ -54,10 +60,13 @@ public class TestClient extends XStreamClient {
   private static final File logDir = new File("log").getAbsoluteFile();
 
   private static TestClient testclient;
-  private static Double significance;
+  /** sequential test whether player1 is stronger, null if all tests are played */
+  private static Sprt sprt;
   private static int minTests;
 
   private static final String classpath = System.getProperty("java.class.path");
+  /** whether player processes can be pinned to cores */
+  private static final boolean taskset = Util.isOnPath("taskset");
 
   public static void main(String[] args) {
     System.setProperty("file.encoding", "UTF-8");
@@ -73,6 +82,13 @@ public class TestClient extends XStreamClient {
     Option numberOfTestsOption = parser.addIntegerOption('t', "tests");
     Option minTestsOption = parser.addIntegerOption("min-tests");
     Option significanceOption = parser.addDoubleOption("significance");
+    Option elo0Option = parser.addDoubleOption("elo0");
+    Option elo1Option = parser.addDoubleOption("elo1");
+    Option alphaOption = parser.addDoubleOption("alpha");
+    Option betaOption = parser.addDoubleOption("beta");
+    Option parallelOption = parser.addIntegerOption("parallel");
+    Option coresOption = parser.addIntegerOption("cores-per-player");
+    Option reuseOption = parser.addBooleanOption("reuse-players");
 
     Option noTimeoutOption = parser.addBooleanOption("no-timeout");
     Option[] execOptions = {parser.addStringOption("player1"), parser.addStringOption("player2")};
@@ -104,13 +120,28 @@ public class TestClient extends XStreamClient {
     int port = (int) parser.getOptionValue(portOption, SharedConfiguration.DEFAULT_TESTSERVER_PORT);
 
     int numberOfTests = (int) parser.getOptionValue(numberOfTestsOption, 100);
-    significance = (Double) parser.getOptionValue(significanceOption);
-    if (significance != null) {
+    try {
+      sprt = Sprt.fromOptions(
+          (Double) parser.getOptionValue(significanceOption),
+          (Double) parser.getOptionValue(elo0Option),
+          (Double) parser.getOptionValue(elo1Option),
+          (Double) parser.getOptionValue(alphaOption),
+          (Double) parser.getOptionValue(betaOption));
+    } catch (IllegalArgumentException e) {
+      logger.error("Invalid sequential test options: " + e.getMessage());
+      exit(2);
+    }
+    if (sprt != null)
       minTests = (int) parser.getOptionValue(minTestsOption, 20);
-      if (numberOfTests > 170) {
-        logger.error("With significance testing the number of tests must not exceed 170!");
-        exit(2);
-      }
+
+    int parallelGames = Math.max(1, (int) parser.getOptionValue(parallelOption, 1));
+    int coresPerPlayer = (int) parser.getOptionValue(coresOption, 0);
+    if (coresPerPlayer > 0) {
+      if (!taskset)
+        logger.warn("taskset is not available, only Java players are limited to {} cores", coresPerPlayer);
+      if (parallelGames * 2 * coresPerPlayer > Runtime.getRuntime().availableProcessors())
+        logger.warn("{} parallel games with {} cores per player need more than the {} available processors, timeouts may be unfair",
+            parallelGames, coresPerPlayer, Runtime.getRuntime().availableProcessors());
     }
 
     boolean noTimeout = (boolean) parser.getOptionValue(noTimeoutOption, false);
@@ -143,7 +174,8 @@ public class TestClient extends XStreamClient {
           Thread.sleep(300);
         Thread.sleep(300);
       }
-      testclient = new TestClient(host, port, numberOfTests);
+      testclient = new TestClient(host, port, numberOfTests, parallelGames, coresPerPlayer,
+          (boolean) parser.getOptionValue(reuseOption, false));
       Runtime.getRuntime().addShutdownHook(new Thread(testclient::printScores));
     } catch (Exception e) {
       logger.error("Error while initializing: " + e);
@@ -168,29 +200,68 @@ public class TestClient extends XStreamClient {
   private final String host;
   private final int port;
 
-  private final ExecutorService waiter = Executors.newSingleThreadExecutor();
+  /** Reaps the player processes of finished games. */
+  private final ExecutorService waiter = Executors.newCachedThreadPool();
+  /** Detects crashed players and hanging games. */
+  private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor();
 
   /** total number of tests that should be executed */
   private final int totalTests;
 
+  /** number of games that are run at the same time */
+  private final int parallelGames;
+
+  /** processors granted to every player process, 0 for no limit */
+  private final int coresPerPlayer;
+
+  /** number of tests that have already been prepared */
+  private int startedTests;
+
   /** number of tests that have already been run */
   private int finishedTests;
 
+  /** player processes by lane and player when they are reused across games, otherwise null */
+  private final PooledPlayer[][] pool;
+
+  /** games waiting for their {@link GamePreparedResponse}, which arrive in the order of the requests */
+  private final Queue<RunningGame> preparing = new ArrayDeque<>();
+
+  /** prepared games by room id */
+  private final Map<String, RunningGame> running = new ConcurrentHashMap<>();
+
   private boolean terminateWhenPossible = false;
   private int playerScores = 0;
   private int irregularGames = 0;
 
   public TestClient(String host, int port, int totalTests) throws IOException {
+    this(host, port, totalTests, 1, 0);
+  }
+
+  /**
+   * @param parallelGames  number of games to keep running at the same time
+   * @param coresPerPlayer processors granted to every player process, 0 for no limit
+   */
+  public TestClient(String host, int port, int totalTests, int parallelGames, int coresPerPlayer) throws IOException {
+    this(host, port, totalTests, parallelGames, coresPerPlayer, false);
+  }
+
+  /** @param reusePlayers whether player processes stay running and join the following games of their lane */
+  public TestClient(String host, int port, int totalTests, int parallelGames, int coresPerPlayer, boolean reusePlayers) throws IOException {
     super(createTcpNetwork(host, port));
 
     this.host = host;
     this.port = port;
     this.totalTests = totalTests;
+    this.parallelGames = parallelGames;
+    this.coresPerPlayer = coresPerPlayer;
+    this.pool = reusePlayers ? new PooledPlayer[parallelGames][2] : null;
     start();
     logger.debug("Authenticating as administrator");
     send(new AuthenticateRequest(sc.server.Configuration.getAdministrativePassword()));
-    logger.info("Starting clients");
-    prepareNewClients();
+    logger.info("Starting clients for {} parallel games", parallelGames);
+    for (int lane = 0; lane < parallelGames; lane++)
+      prepareNewClients(lane);
+    monitor.scheduleWithFixedDelay(this::checkGames, 1, 1, TimeUnit.SECONDS);
   }
 
   private boolean gameProgressing = false;
@@ -205,17 +276,25 @@ public class TestClient extends XStreamClient {
           gameProgressing = false;
           System.out.println();
         }
+        RunningGame game = running.get(packet.getRoomId());
+        if (game == null || game.finished) {
+          logger.warn("Received unexpected result for room {}", packet.getRoomId());
+          return;
+        }
+        game.finished = true;
         GameResult result = (GameResult) packet.getData();
         if (!result.isRegular())
           irregularGames++;
-        logger.warn("Game {} ended {} Winner: {}", finishedTests, result.isRegular() ? "regularly -" : "abnormally!", result.getWinner());
+        logger.warn("Game {} ended {} Winner: {}", game.number, result.isRegular() ? "regularly -" : "abnormally!", result.getWinner());
 
         finishedTests++;
         ScoreDefinition scoreDefinition = result.getDefinition();
         StringBuilder scoreUpdate = new StringBuilder(String.format("New scores after %s of %s games:", finishedTests, totalTests));
         for (int player = 0; player < players.length; player++) {
-          int finalPlayer = (finishedTests - 1 + player) % 2;
+          int finalPlayer = (game.number + player) % 2;
           PlayerScore scores = result.getScores().entrySet().stream().filter(entry -> entry.getKey().getTeam().getIndex() == finalPlayer).findFirst().get().getValue();
+          if (player == 0 && sprt != null)
+            sprt.add(scores.getParts()[0].intValue());
           if(players[player].score == null)
             players[player].score = new ScoreValue[scoreDefinition.getSize()];
           ScoreValue[] scoreValues = players[player].score;
@@ -246,24 +325,34 @@ public class TestClient extends XStreamClient {
           ));
         }
         logger.info(scoreUpdate.toString());
+        if (sprt != null)
+          logger.info("SPRT: {}", sprt);
 
         if (isSignificant() || finishedTests == totalTests) {
           printScores();
           exit(0);
         }
 
-        try {
-          for (ClientPlayer player : players)
-            player.proc.waitFor(5, TimeUnit.SECONDS);
-        } catch (InterruptedException ignored) {
+        if (pool != null) {
+          running.remove(packet.getRoomId());
+          prepareNewClients(game.lane);
+          return;
         }
-        for (ClientPlayer player : players)
-          if (player.proc.isAlive()) {
-            logger.warn("ClientPlayer {} is not responding anymore. Killing...", player.name);
-            player.proc.destroyForcibly();
+        // the next game of this lane starts once the players left its cores
+        waiter.execute(() -> {
+          try {
+            for (Process proc : game.procs)
+              proc.waitFor(5, TimeUnit.SECONDS);
+          } catch (InterruptedException ignored) {
           }
-
-        prepareNewClients();
+          for (int i = 0; i < 2; i++)
+            if (game.procs[i].isAlive()) {
+              logger.warn("ClientPlayer {} is not responding anymore. Killing...", players[i].name);
+              game.procs[i].destroyForcibly();
+            }
+          running.remove(packet.getRoomId());
+          prepareNewClients(game.lane);
+        });
       } else {
         if (logger.isInfoEnabled() && !logger.isTraceEnabled()) {
           if (!gameProgressing) {
@@ -277,34 +366,18 @@ public class TestClient extends XStreamClient {
       logger.debug("Received PrepareGame - starting clients");
       playerScores = 0;
       GamePreparedResponse pgm = (GamePreparedResponse) message;
+      RunningGame game;
+      synchronized (preparing) {
+        game = preparing.remove();
+      }
       send(new ObservationRequest(pgm.getRoomId()));
       try {
-        for (int i = 0; i < 2; i++)
-          startPlayer(i, pgm.getReservations().get((finishedTests + i) % 2));
-
-        waiter.execute(() -> {
-          int tests = finishedTests;
-          int slept = 0;
-          while (tests == finishedTests) {
-            // Detect failed clients
-            for (ClientPlayer player : players)
-              if (!player.proc.isAlive()) {
-                logger.error("{} crashed, look into {}", player.name, logDir);
-                exit(2);
-              }
-            if (slept > plugin.getGameTimeout()) {
-              logger.error("The game seems to hang, exiting!");
-              exit(2);
-            }
-            try {
-              Thread.sleep(1000);
-              slept++;
-            } catch (InterruptedException ignored) {
-              break;
-            }
-          }
-        });
-
+        for (int i = 0; i < 2; i++) {
+          String reservation = pgm.getReservations().get((game.number + i) % 2);
+          game.procs[i] = pool == null ? startPlayer(i, reservation, game) : joinPooledPlayer(i, reservation, game);
+        }
+        game.startedAt = System.nanoTime();
+        running.put(pgm.getRoomId(), game);
       } catch (IOException e) {
         e.printStackTrace();
       }
@@ -324,46 +397,110 @@ public class TestClient extends XStreamClient {
         .round(new MathContext(BIG_DECIMAL_SCALE + 2));
   }
 
-  private void startPlayer(int id, String reservation) throws IOException {
+  /** lets the process of the player on the lane of the game join it, starting it if it is not running */
+  private Process joinPooledPlayer(int id, String reservation, RunningGame game) throws IOException {
+    PooledPlayer player = pool[game.lane][id];
+    if (player == null || !player.proc.isAlive()) {
+      if (player != null)
+        logger.warn("{} crashed after {} games, restarting it - look into {}", players[id].name, player.games, logDir);
+      player = new PooledPlayer(startPlayer(id, null, game));
+      pool[game.lane][id] = player;
+    }
+    player.join(reservation);
+    return player.proc;
+  }
+
+  /** @param reservation reservation to join, null to start a process which reads reservations from its standard input */
+  private Process startPlayer(int id, String reservation, RunningGame game) throws IOException {
     ClientPlayer player = players[id];
-    ProcessBuilder builder;
+    List<String> command = new ArrayList<>();
+    if (coresPerPlayer > 0 && taskset) {
+      // every player of every lane gets its own cores, so parallel games don't steal each other's time
+      int processors = Runtime.getRuntime().availableProcessors();
+      int first = (game.lane * 2 + id) * coresPerPlayer;
+      command.addAll(Arrays.asList("taskset", "-c", IntStream.range(first, first + coresPerPlayer)
+          .mapToObj(core -> String.valueOf(core % processors)).collect(Collectors.joining(","))));
+    }
     if (player.isJar) {
       logger.debug("Invoking client {} with Java", player.name);
-      builder = new ProcessBuilder("java", "-jar", "-mx1500m", player.executable.getAbsolutePath(), "-r", reservation, "-h", host, "-p", Integer.toString(port));
+      command.addAll(Arrays.asList("java", "-jar", "-mx1500m"));
+      if (coresPerPlayer > 0)
+        command.add("-XX:ActiveProcessorCount=" + coresPerPlayer);
+      command.addAll(Arrays.asList(player.executable.getAbsolutePath(), "-h", host, "-p", Integer.toString(port)));
     } else {
       logger.debug("Invoking client {}", player.name);
-      builder = new ProcessBuilder(player.executable.getAbsolutePath(), "--reservation", reservation, "--host", host, "--port", Integer.toString(port));
+      command.addAll(Arrays.asList(player.executable.getAbsolutePath(), "--host", host, "--port", Integer.toString(port)));
     }
+    if (reservation != null)
+      command.addAll(Arrays.asList("--reservation", reservation));
+    else
+      command.add("--keep-alive");
+    ProcessBuilder builder = new ProcessBuilder(command);
 
     logDir.mkdirs();
-    builder.redirectOutput(new File(logDir, players[id].name + "_game" + (finishedTests + 1) + ".log"));
-    builder.redirectError(new File(logDir, players[id].name + "_game" + (finishedTests + 1) + "-err.log"));
-    players[id].proc = builder.start();
+    // a reused process logs all games of its lane starting with this one
+    String logName = players[id].name + (reservation == null ? "_lane" + (game.lane + 1) + "_from" : "") + "_game" + (game.number + 1);
+    builder.redirectOutput(new File(logDir, logName + ".log"));
+    builder.redirectError(new File(logDir, logName + "-err.log"));
+    Process proc = builder.start();
     try {
       Thread.sleep(100);
     } catch (InterruptedException ignored) {
     }
+    return proc;
   }
 
-  /** prepares slots for new clients (if {@link #finishedTests} is even player1 starts, otherwise player2) */
-  private void prepareNewClients() {
-    SlotDescriptor[] slots = new SlotDescriptor[2];
-    for (int i = 0; i < 2; i++)
-      slots[(finishedTests + i) % 2] = new SlotDescriptor(players[i].name, players[i].canTimeout);
-    logger.debug("Prepared client slots: " + Arrays.toString(slots));
-    send(new PrepareGameRequest(plugin.getId(), slots[0], slots[1], false));
+  /** prepares slots for new clients on the given lane unless all tests have been started
+   * (if the number of the game is even player1 starts, otherwise player2) */
+  private void prepareNewClients(int lane) {
+    synchronized (preparing) {
+      if (startedTests >= totalTests)
+        return;
+      RunningGame game = new RunningGame(startedTests++, lane);
+      SlotDescriptor[] slots = new SlotDescriptor[2];
+      for (int i = 0; i < 2; i++)
+        slots[(game.number + i) % 2] = new SlotDescriptor(players[i].name, players[i].canTimeout);
+      logger.debug("Prepared client slots: " + Arrays.toString(slots));
+      // added before sending, as the response may arrive right away
+      preparing.add(game);
+      send(new PrepareGameRequest(plugin.getId(), slots[0], slots[1], false));
+    }
+  }
+
+  /** Exits if a player of a running game crashed or a game takes too long.
+   * Reused players are restarted for the next game instead, as the server ends a game its player left. */
+  private void checkGames() {
+    for (RunningGame game : running.values()) {
+      if (game.finished)
+        continue;
+      for (int i = 0; i < 2 && pool == null; i++)
+        if (!game.procs[i].isAlive() && !game.finished) {
+          logger.error("{} crashed in game {}, look into {}", players[i].name, game.number + 1, logDir);
+          exit(2);
+        }
+      if (TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - game.startedAt) > plugin.getGameTimeout()) {
+        logger.error("Game {} seems to hang, exiting!", game.number + 1);
+        exit(2);
+      }
+    }
   }
 
   private static void exit(int status) {
     if (testclient != null) {
       testclient.stop();
       testclient.waiter.shutdownNow();
+      testclient.monitor.shutdownNow();
+      for (RunningGame game : testclient.running.values())
+        for (Process proc : game.procs)
+          if (proc != null)
+            proc.destroyForcibly();
+      if (testclient.pool != null)
+        for (PooledPlayer[] lane : testclient.pool)
+          for (PooledPlayer player : lane)
+            if (player != null)
+              player.proc.destroyForcibly();
     }
 
-    for (ClientPlayer player : players)
-      if (player.proc != null)
-        player.proc.destroyForcibly();
-
     if (status != 0)
       logger.warn("Terminating with exit code " + status);
     System.exit(status);
@@ -388,24 +525,18 @@ public class TestClient extends XStreamClient {
     }
   }
 
+  /** @return whether the sequential test accepted either hypothesis */
   private boolean isSignificant() {
-    if (significance == null || finishedTests < minTests)
+    if (sprt == null || finishedTests < minTests)
       return false;
-    int n = finishedTests;
-    IntToDoubleFunction binominalPD = (int k) -> pow(0.5, k) * pow(0.5, n - k) * (factorial(n, k) / factorial(n - k));
-    players:
-    for (int i = 0; i < 2; i++) {
-      double binominalCD = 0.0;
-      // TODO use global WIN_SCORE constant instead of hardcoding 2
-      for (int k = 0; k <= players[i].score[0].getValue().intValue() / 2; k++) {
-        binominalCD += binominalPD.applyAsDouble(k);
-        if (binominalCD > significance)
-          continue players;
-      }
-      logger.warn(String.format("%s is significantly better! Uncertainty: %.2f%%", players[(i + 1) % 2].name, binominalCD * 100));
-      return true;
-    }
-    return false;
+    Sprt.Decision decision = sprt.getDecision();
+    if (decision == null)
+      return false;
+    if (decision == Sprt.Decision.H1)
+      logger.warn("{} is at least {} Elo stronger than {}! {}", players[0].name, sprt.getElo1(), players[1].name, sprt);
+    else
+      logger.warn("{} is at most {} Elo stronger than {}! {}", players[0].name, sprt.getElo0(), players[1].name, sprt);
+    return true;
   }
 
   @Override
@@ -431,22 +562,54 @@ class ClientPlayer {
     return String.format("ClientPlayer{name='%s', executable='%s', isJar=%s, canTimeout=%s}", name, executable, isJar, canTimeout);
   }
 
-  Process proc;
   ScoreValue[] score;
 }
 
+/** A game of the TestClient from its preparation until its player processes exit. */
+class RunningGame {
+  /** 0-based number of the game, decides which player starts */
+  final int number;
+  /** the slot among the parallel games, decides the cores of the players */
+  final int lane;
+  final Process[] procs = new Process[2];
+  volatile long startedAt;
+  /** whether the result was received */
+  volatile boolean finished;
+
+  RunningGame(int number, int lane) {
+    this.number = number;
+    this.lane = lane;
+  }
+}
+
+/** A player process of the TestClient which joins one game after another. */
+class PooledPlayer {
+  final Process proc;
+  private final Writer reservations;
+  /** number of games this process joined */
+  int games;
+
+  PooledPlayer(Process proc) {
+    this.proc = proc;
+    this.reservations = new OutputStreamWriter(proc.getOutputStream(), StandardCharsets.UTF_8);
+  }
+
+  void join(String reservation) throws IOException {
+    reservations.write(reservation + "\n");
+    reservations.flush();
+    games++;
+  }
+}
+
 class Util {
 
   static boolean isJar(File f) {
     return f.getName().endsWith("jar") && f.exists();
   }
 
-  static double factorial(int n) {
-    return n <= 1 ? 1 : factorial(n - 1) * n;
-  }
-
-  static double factorial(int n, int downTo) {
-    return n <= downTo ? 1 : factorial(n - 1, downTo) * n;
+  static boolean isOnPath(String command) {
+    return Arrays.stream(System.getenv().getOrDefault("PATH", "").split(File.pathSeparator))
+        .anyMatch(dir -> new File(dir, command).canExecute());
   }
 
 }
@@ -0,0 +1,47 @@
+package sc
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.doubles.plusOrMinus
+import io.kotest.matchers.nulls.shouldBeNull
+import sc.framework.plugins.Constants
+import kotlin.math.ln
+
+class SprtTest: FunSpec({
+    fun Sprt.add(wins: Int, draws: Int, losses: Int) = apply {
+        repeat(wins) { add(Constants.WIN_SCORE) }
+        repeat(draws) { add(Constants.DRAW_SCORE) }
+        repeat(losses) { add(Constants.LOSE_SCORE) }
+    }
+
+    test("bounds follow from alpha and beta") {
+        val sprt = Sprt(alpha = 0.05, beta = 0.1)
+        sprt.lowerBound shouldBe ln(0.1 / 0.95)
+        sprt.upperBound shouldBe ln(0.9 / 0.05)
+        shouldThrow<IllegalArgumentException> { Sprt(elo0 = 10.0, elo1 = 10.0) }
+        shouldThrow<IllegalArgumentException> { Sprt(alpha = 0.0) }
+        shouldThrow<IllegalArgumentException> { Sprt(beta = 1.0) }
+    }
+    test("log-likelihood ratio") {
+        Sprt().llr shouldBe 0.0
+        Sprt().add(3, 2, 1).llr shouldBe (0.216013385 plusOrMinus 1e-9)
+        Sprt().add(30, 20, 10).llr shouldBe (2.615787086 plusOrMinus 1e-9)
+    }
+    test("only wins accept H1") {
+        val sprt = Sprt().add(10, 0, 0)
+        sprt.decision.shouldBeNull()
+        sprt.add(Constants.WIN_SCORE)
+        sprt.decision shouldBe Sprt.Decision.H1
+    }
+    test("only losses accept H0") {
+        val sprt = Sprt().add(0, 0, 10)
+        sprt.decision.shouldBeNull()
+        sprt.add(Constants.LOSE_SCORE)
+        sprt.decision shouldBe Sprt.Decision.H0
+    }
+    test("only draws accept H0") {
+        Sprt().add(0, 38, 0).decision.shouldBeNull()
+        Sprt().add(0, 39, 0).decision shouldBe Sprt.Decision.H0
+    }
+})
@@ -4,14 +4,21 @@ import jargs.gnu.CmdLineParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sc.api.plugins.IGamePlugin;
+import sc.networking.WireFormat;
 import sc.networking.clients.LobbyClient;
 import sc.player.IGameHandler;
 import sc.player.IPlayerClient;
 import sc.player.Logic;
 import sc.shared.SharedConfiguration;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Hauptklasse des Clients, die über Konsolenargumente gesteuert werden kann.
@@ -21,9 +28,14 @@ public class Starter {
   private static final Logger logger = LoggerFactory.getLogger(Starter.class);
 
   public Starter(String host, int port, String reservation, String roomId) throws IOException {
+    this(host, port, reservation, roomId, WireFormat.XML);
+  }
+
+  /** @param wireFormat Format der Kommunikation, {@link WireFormat#BINARY} ist kompakter als XML */
+  public Starter(String host, int port, String reservation, String roomId, WireFormat wireFormat) throws IOException {
     // Strategie zuweisen
     IGameHandler logic = new Logic();
-    IPlayerClient client = new LobbyClient(host, port).asPlayer(logic, false);
+    IPlayerClient client = new LobbyClient(host, port, wireFormat).asPlayer(logic, false);
 
     // einem Spiel beitreten
     if (reservation != null && !reservation.isEmpty()) {
@@ -35,6 +47,45 @@ public class Starter {
     }
   }
 
+  /**
+   * Bleibt mit dem Server verbunden und tritt für jede Zeile der Eingabe dem Spiel mit dieser Reservierung bei,
+   * sodass die JVM über viele Spiele hinweg warm bleibt.
+   * Kehrt zurück, sobald die Eingabe endet oder die Verbindung zum Server abbricht.
+   *
+   * @return ob die Eingabe geendet hat, false bei Verbindungsabbruch
+   */
+  public static boolean playReservations(String host, int port, WireFormat wireFormat, BufferedReader input) throws IOException, InterruptedException {
+    LobbyClient lobby = new LobbyClient(host, port, wireFormat);
+    IPlayerClient client = lobby.asPlayer(new Logic(), true);
+    // die Eingabe wird nebenher gelesen, damit ein Verbindungsabbruch sofort bemerkt wird
+    BlockingQueue<String> reservations = new LinkedBlockingQueue<>();
+    Thread reader = new Thread(() -> {
+      try {
+        String line;
+        while ((line = input.readLine()) != null)
+          reservations.add(line);
+      } catch (IOException e) {
+        logger.warn("Die Eingabe konnte nicht gelesen werden", e);
+      }
+    }, "Reservations");
+    reader.setDaemon(true);
+    reader.start();
+
+    while (!lobby.isClosed()) {
+      String reservation = reservations.poll(100, TimeUnit.MILLISECONDS);
+      if (reservation == null) {
+        if (!reader.isAlive() && reservations.isEmpty()) {
+          lobby.stop();
+          return true;
+        }
+      } else if (!reservation.trim().isEmpty()) {
+        client.joinGameWithReservation(reservation.trim());
+      }
+    }
+    logger.error("Die Verbindung zum Server ist abgebrochen");
+    return false;
+  }
+
   public static void main(String[] args) {
     System.setProperty("file.encoding", "UTF-8");
 
@@ -45,6 +96,8 @@ public class Starter {
     CmdLineParser.Option reservationOption = parser.addStringOption('r', "reservation");
     CmdLineParser.Option roomOption = parser.addStringOption("room");
     CmdLineParser.Option verifyOption = parser.addBooleanOption("verify");
+    CmdLineParser.Option binaryOption = parser.addBooleanOption("binary");
+    CmdLineParser.Option keepAliveOption = parser.addBooleanOption("keep-alive");
 
     try {
       // Parameter auslesen
@@ -63,10 +116,16 @@ public class Starter {
     int port = (Integer) parser.getOptionValue(portOption, SharedConfiguration.DEFAULT_PORT);
     String reservation = (String) parser.getOptionValue(reservationOption);
     String room = (String) parser.getOptionValue(roomOption);
+    WireFormat wireFormat = parser.getOptionValue(binaryOption) == Boolean.TRUE ? WireFormat.BINARY : WireFormat.XML;
 
     // einen neuen client erzeugen
     try {
-      new Starter(host, port, reservation, room);
+      if (parser.getOptionValue(keepAliveOption) == Boolean.TRUE) {
+        // ein Verbindungsabbruch beendet den Prozess, damit er neu gestartet werden kann
+        boolean inputEnded = playReservations(host, port, wireFormat, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+        System.exit(inputEnded ? 0 : 1);
+      }
+      new Starter(host, port, reservation, room, wireFormat);
     } catch (Exception e) {
       logger.error("Beim Starten des Clients ist ein Fehler aufgetreten:", e);
       e.printStackTrace();
@@ -81,7 +140,9 @@ public class Starter {
             + "java -jar " + jarName + " [{-h,--host} hostname]\n"
             + "                               [{-p,--port} port]\n"
             + "                               [{-r,--reservation} reservierung]\n"
-            + "                               [--room raumnummer]\n");
+            + "                               [--room raumnummer]\n"
+            + "                               [--binary]\n"
+            + "                               [--keep-alive]  (Reservierungen zeilenweise von der Standardeingabe)\n");
     System.out.println("Beispiel: \n"
             + "java -jar " + jarName + " --host 127.0.0.1 --port 10500 --reservation 1234\n");
   }
@@ -10,4 +10,8 @@ tasks {
     jar {
         archiveBaseName.set(game)
     }
+    
+    test {
+        System.getProperty("loadtest")?.let { systemProperty("loadtest", it) }
+    }
 }
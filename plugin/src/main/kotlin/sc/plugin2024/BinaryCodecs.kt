@@ -0,0 +1,166 @@
+package sc.plugin2024
+
+import sc.api.plugins.CubeCoordinates
+import sc.api.plugins.CubeDirection
+import sc.api.plugins.Team
+import sc.networking.binary.BinaryCodec
+import sc.networking.binary.BinaryCodecProvider
+import sc.networking.binary.BinaryInput
+import sc.networking.binary.BinaryOutput
+import sc.plugin2024.actions.Accelerate
+import sc.plugin2024.actions.Advance
+import sc.plugin2024.actions.Push
+import sc.plugin2024.actions.Turn
+import java.io.StreamCorruptedException
+
+/** Kompakte Kodierung von [GameState] und [Move] für [sc.networking.WireFormat.BINARY].
+ * Wie im XML werden nur die sichtbaren Segmente übertragen. */
+class BinaryCodecs: BinaryCodecProvider {
+    override val codecs: Collection<BinaryCodec<*>> = listOf(StateCodec, MoveCodec)
+
+    object StateCodec: BinaryCodec<GameState> {
+        override val tag = 32
+        override val type = GameState::class.java
+
+        override fun write(value: GameState, output: BinaryOutput) {
+            output.writeEnum(value.startTeam)
+            output.writeEnum(value.currentTeam)
+            output.writeVarInt(value.turn)
+            writeBoard(value.board, output)
+            output.writeByte(value.ships.size)
+            value.ships.forEach { writeShip(it, output) }
+            output.writeBoolean(value.lastMove != null)
+            value.lastMove?.let { MoveCodec.write(it, output) }
+        }
+
+        override fun read(input: BinaryInput): GameState {
+            val startTeam = input.readEnum(Team.values())
+            val currentTeam = input.readEnum(Team.values())
+            val turn = input.readVarInt()
+            val board = readBoard(input)
+            val ships = List(input.readUnsignedByte()) { readShip(input) }
+            val lastMove = if(input.readBoolean()) MoveCodec.read(input) else null
+            return GameState(board, turn, ships, startTeam, lastMove).also { it.currentTeam = currentTeam }
+        }
+
+        private fun writeBoard(board: Board, output: BinaryOutput) {
+            val visible = board.segments.take(board.visibleSegments)
+            output.writeEnum(board.segments.getOrNull(board.visibleSegments)?.direction ?: board.nextDirection)
+            output.writeByte(visible.size)
+            visible.forEach { segment ->
+                output.writeEnum(segment.direction)
+                writeCoordinates(segment.center, output)
+                output.writeByte(segment.fields.size)
+                output.writeByte(segment.fields.firstOrNull()?.size ?: 0)
+                segment.fields.forEach { column -> column.forEach { writeField(it, output) } }
+            }
+        }
+
+        private fun readBoard(input: BinaryInput): Board {
+            val nextDirection = input.readEnum(CubeDirection.values())
+            val segments = List(input.readUnsignedByte()) {
+                val direction = input.readEnum(CubeDirection.values())
+                val center = readCoordinates(input)
+                val width = input.readUnsignedByte()
+                val height = input.readUnsignedByte()
+                Segment(direction, center, Array(width) { Array(height) { readField(input) } })
+            }
+            return Board(segments, segments.size, nextDirection)
+        }
+
+        private fun writeField(field: Field, output: BinaryOutput) {
+            when(field) {
+                Field.WATER -> output.writeByte(0)
+                Field.ISLAND -> output.writeByte(1)
+                Field.GOAL -> output.writeByte(2)
+                Field.SANDBANK -> output.writeByte(3)
+                is Field.PASSENGER -> {
+                    output.writeByte(4)
+                    output.writeEnum(field.direction)
+                    output.writeVarInt(field.passenger)
+                }
+            }
+        }
+
+        private fun readField(input: BinaryInput): Field =
+                when(val type = input.readUnsignedByte()) {
+                    0 -> Field.WATER
+                    1 -> Field.ISLAND
+                    2 -> Field.GOAL
+                    3 -> Field.SANDBANK
+                    4 -> Field.PASSENGER(input.readEnum(CubeDirection.values()), input.readVarInt())
+                    else -> throw StreamCorruptedException("Unknown field type $type")
+                }
+
+        private fun writeShip(ship: Ship, output: BinaryOutput) {
+            writeCoordinates(ship.position, output)
+            output.writeEnum(ship.team)
+            output.writeEnum(ship.direction)
+            output.writeVarInt(ship.speed)
+            output.writeVarInt(ship.coal)
+            output.writeVarInt(ship.passengers)
+            output.writeVarInt(ship.freeTurns)
+            output.writeVarInt(ship.points)
+        }
+
+        /** Like [Ship.readResolve], movement and free acceleration are reset. */
+        private fun readShip(input: BinaryInput) = Ship(
+                position = readCoordinates(input),
+                team = input.readEnum(Team.values()),
+                direction = input.readEnum(CubeDirection.values()),
+                speed = input.readVarInt(),
+                coal = input.readVarInt(),
+                passengers = input.readVarInt(),
+                freeTurns = input.readVarInt(),
+                points = input.readVarInt(),
+        )
+
+        private fun writeCoordinates(coordinates: CubeCoordinates, output: BinaryOutput) {
+            output.writeVarInt(coordinates.q)
+            output.writeVarInt(coordinates.r)
+        }
+
+        private fun readCoordinates(input: BinaryInput) =
+                CubeCoordinates(input.readVarInt(), input.readVarInt())
+    }
+
+    object MoveCodec: BinaryCodec<Move> {
+        override val tag = 33
+        override val type = Move::class.java
+
+        override fun write(value: Move, output: BinaryOutput) {
+            output.writeByte(value.actions.size)
+            value.actions.forEach { action ->
+                when(action) {
+                    is Accelerate -> {
+                        output.writeByte(0)
+                        output.writeVarInt(action.acc)
+                    }
+                    is Advance -> {
+                        output.writeByte(1)
+                        output.writeVarInt(action.distance)
+                    }
+                    is Push -> {
+                        output.writeByte(2)
+                        output.writeEnum(action.direction)
+                    }
+                    is Turn -> {
+                        output.writeByte(3)
+                        output.writeEnum(action.direction)
+                    }
+                    else -> throw IllegalArgumentException("Unknown action $action")
+                }
+            }
+        }
+
+        override fun read(input: BinaryInput) = Move(List(input.readUnsignedByte()) {
+            when(val type = input.readUnsignedByte()) {
+                0 -> Accelerate(input.readVarInt())
+                1 -> Advance(input.readVarInt())
+                2 -> Push(input.readEnum(CubeDirection.values()))
+                3 -> Turn(input.readEnum(CubeDirection.values()))
+                else -> throw StreamCorruptedException("Unknown action type $type")
+            }
+        })
+    }
+}
@@ -1,10 +1,17 @@
 package sc.plugin2024
 
+import com.thoughtworks.xstream.XStream
 import sc.networking.XStreamProvider
 import sc.plugin2024.actions.Accelerate
 import sc.plugin2024.actions.Advance
 import sc.plugin2024.actions.Push
 import sc.plugin2024.actions.Turn
+import sc.plugin2024.util.ActionConverter
+import sc.plugin2024.util.FieldConverter
+import sc.plugin2024.util.GameStateConverter
+import sc.plugin2024.util.MoveConverter
+import sc.plugin2024.util.SegmentConverter
+import sc.plugin2024.util.ShipConverter
 
 class XStreamClasses: XStreamProvider {
     
@@ -25,4 +32,15 @@ class XStreamClasses: XStreamProvider {
                     Field.PASSENGER::class.java,
             )
     
+    /** Hand-written converters for the classes sent every turn,
+     * producing the same XML as the reflective converter. */
+    override fun setup(xStream: XStream) {
+        xStream.registerConverter(GameStateConverter())
+        xStream.registerConverter(ShipConverter())
+        xStream.registerConverter(SegmentConverter())
+        xStream.registerConverter(FieldConverter())
+        xStream.registerConverter(MoveConverter(xStream.mapper))
+        xStream.registerConverter(ActionConverter())
+    }
+    
 }
\ No newline at end of file
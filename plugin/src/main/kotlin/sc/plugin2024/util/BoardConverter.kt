@@ -6,23 +6,33 @@ import com.thoughtworks.xstream.converters.UnmarshallingContext
 import com.thoughtworks.xstream.io.HierarchicalStreamReader
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter
 import sc.api.plugins.CubeDirection
+import sc.networking.XStreamProvider
 import sc.plugin2024.Board
 import sc.plugin2024.Segments
 import sc.util.read
 
+/** Writes only the visible segments, unless the board is serialized unredacted,
+ * see [XStreamProvider.toUnredactedXML]. */
 class BoardConverter: Converter {
     override fun canConvert(clazz: Class<*>?): Boolean =
             clazz == Board::class.java
     
     override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
         @Suppress("Unchecked_cast") val board = value as Board
+        if(XStreamProvider.isUnredacted(context)) {
+            writer.addAttribute("nextDirection", board.nextDirection.toString())
+            writer.addAttribute("visibleSegments", board.visibleSegments.toString())
+            context.convertAnother(board.segments.toList())
+            return
+        }
         writer.addAttribute("nextDirection", (board.segments.getOrNull(board.visibleSegments)?.direction ?: board.nextDirection).toString())
         context.convertAnother(board.segments.take(board.visibleSegments))
     }
     
     override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Board {
         val dir = CubeDirection.valueOf(reader.getAttribute("nextDirection"))
+        val visible = reader.getAttribute("visibleSegments")?.toInt()
         val segments = context.read<Segments>()
-        return Board(segments, segments.size, nextDirection = dir)
+        return Board(segments, visible ?: segments.size, nextDirection = dir)
     }
 }
\ No newline at end of file
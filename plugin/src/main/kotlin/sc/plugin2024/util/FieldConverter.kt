@@ -0,0 +1,49 @@
+package sc.plugin2024.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.converters.Converter
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import sc.plugin2024.Field
+
+class FieldConverter: Converter {
+    override fun canConvert(clazz: Class<*>?): Boolean =
+            clazz != null && Field::class.java.isAssignableFrom(clazz)
+
+    override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) =
+            writeAttributes(value as Field, writer)
+
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Field =
+            read(reader)
+
+    companion object {
+        /** Element name of the field, matching its alias. */
+        fun nodeName(field: Field): String = when(field) {
+            Field.WATER -> "water"
+            Field.ISLAND -> "island"
+            Field.GOAL -> "goal"
+            Field.SANDBANK -> "sandbank"
+            is Field.PASSENGER -> "passenger"
+        }
+
+        fun writeAttributes(field: Field, writer: HierarchicalStreamWriter) {
+            if(field is Field.PASSENGER) {
+                writer.addAttribute("direction", field.direction.name)
+                writer.addAttribute("passenger", field.passenger.toString())
+            }
+        }
+
+        /** Reads the field the reader is currently positioned on. */
+        fun read(reader: HierarchicalStreamReader): Field =
+                when(val name = reader.nodeName) {
+                    "water" -> Field.WATER
+                    "island" -> Field.ISLAND
+                    "goal" -> Field.GOAL
+                    "sandbank" -> Field.SANDBANK
+                    "passenger" -> Field.PASSENGER(reader.directionAttribute(), reader.intAttribute("passenger"))
+                    else -> throw ConversionException("Unknown field <$name>")
+                }
+    }
+}
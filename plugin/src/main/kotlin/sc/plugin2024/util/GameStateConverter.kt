@@ -0,0 +1,50 @@
+package sc.plugin2024.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.converters.Converter
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import sc.api.plugins.Team
+import sc.plugin2024.Board
+import sc.plugin2024.GameState
+import sc.plugin2024.Move
+import sc.plugin2024.Ship
+import sc.util.makeNode
+import sc.util.read
+
+/** The state is sent to every recipient after each turn,
+ * so it is written without going through reflection. */
+class GameStateConverter: Converter {
+    override fun canConvert(clazz: Class<*>?): Boolean =
+            clazz == GameState::class.java
+
+    override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
+        val state = value as GameState
+        writer.addAttribute("startTeam", state.startTeam.name)
+        writer.addAttribute("turn", state.turn.toString())
+        writer.addAttribute("currentTeam", state.currentTeam.name)
+        writer.makeNode("board") { context.convertAnother(state.board) }
+        state.ships.forEach { ship -> writer.makeNode("ship") { context.convertAnother(ship) } }
+        state.lastMove?.let { move -> writer.makeNode("lastMove") { context.convertAnother(move) } }
+    }
+
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): GameState {
+        val startTeam = Team.valueOf(reader.requireAttribute("startTeam"))
+        val turn = reader.intAttribute("turn")
+        val currentTeam = reader.getAttribute("currentTeam")?.let { Team.valueOf(it) } ?: startTeam
+        var board: Board? = null
+        val ships = ArrayList<Ship>(2)
+        var lastMove: Move? = null
+        reader.forEachChild { name ->
+            when(name) {
+                "board" -> board = context.read<Board>()
+                "ship" -> ships.add(context.read<Ship>())
+                "lastMove" -> lastMove = context.read<Move>()
+            }
+        }
+        return GameState(board ?: throw ConversionException("State without board"), turn, ships, startTeam, lastMove)
+                .also { it.currentTeam = currentTeam }
+    }
+}
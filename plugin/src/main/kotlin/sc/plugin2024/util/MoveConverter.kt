@@ -0,0 +1,96 @@
+package sc.plugin2024.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.converters.Converter
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import com.thoughtworks.xstream.mapper.Mapper
+import sc.plugin2024.Action
+import sc.plugin2024.Move
+import sc.plugin2024.actions.Accelerate
+import sc.plugin2024.actions.Advance
+import sc.plugin2024.actions.Push
+import sc.plugin2024.actions.Turn
+import sc.util.makeNode
+
+/** Writes the actions directly if they are in the default list implementation,
+ * otherwise through the [mapper] and the context like the reflective converter did.
+ * @param mapper names the list implementation of the actions */
+class MoveConverter(private val mapper: Mapper): Converter {
+    override fun canConvert(clazz: Class<*>?): Boolean =
+            clazz == Move::class.java
+
+    override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
+        val move = value as Move
+        writer.makeNode("actions") {
+            val type = move.actions.javaClass
+            if(type == mapper.defaultImplementationOf(List::class.java)) {
+                move.actions.forEach { action ->
+                    makeNode(ActionConverter.nodeName(action)) { ActionConverter.writeAttributes(action, this) }
+                }
+            } else {
+                mapper.aliasForSystemAttribute("class")?.let { addAttribute(it, mapper.serializedClass(type)) }
+                context.convertAnother(move.actions)
+            }
+        }
+    }
+
+    @Suppress("UNCHECKED_CAST")
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Move {
+        val actions = ArrayList<Action>()
+        reader.forEachChild { name ->
+            if(name == "actions") {
+                val type = mapper.aliasForSystemAttribute("class")?.let { reader.getAttribute(it) }
+                if(type != null)
+                    actions.addAll(context.convertAnother(null, mapper.realClass(type)) as List<Action>)
+                else
+                    reader.forEachChild { actions.add(ActionConverter.read(reader)) }
+            }
+        }
+        return Move(actions)
+    }
+}
+
+class ActionConverter: Converter {
+    override fun canConvert(clazz: Class<*>?): Boolean =
+            clazz == Accelerate::class.java || clazz == Advance::class.java ||
+            clazz == Push::class.java || clazz == Turn::class.java
+
+    override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) =
+            writeAttributes(value as Action, writer)
+
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Action =
+            read(reader)
+
+    companion object {
+        /** Element name of the action, matching its alias. */
+        fun nodeName(action: Action): String = when(action) {
+            is Accelerate -> "acceleration"
+            is Advance -> "advance"
+            is Push -> "push"
+            is Turn -> "turn"
+            else -> throw ConversionException("Unknown action $action")
+        }
+
+        fun writeAttributes(action: Action, writer: HierarchicalStreamWriter) {
+            when(action) {
+                is Accelerate -> writer.addAttribute("acc", action.acc.toString())
+                is Advance -> writer.addAttribute("distance", action.distance.toString())
+                is Push -> writer.addAttribute("direction", action.direction.name)
+                is Turn -> writer.addAttribute("direction", action.direction.name)
+            }
+        }
+
+        /** Reads the action the reader is currently positioned on. */
+        fun read(reader: HierarchicalStreamReader): Action =
+                when(val name = reader.nodeName) {
+                    "acceleration" -> Accelerate(reader.intAttribute("acc"))
+                    "advance" -> Advance(reader.intAttribute("distance"))
+                    "push" -> Push(reader.directionAttribute())
+                    "turn" -> Turn(reader.directionAttribute())
+                    else -> throw ConversionException("Unknown action <$name>")
+                }
+    }
+}
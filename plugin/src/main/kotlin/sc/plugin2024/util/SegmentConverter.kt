@@ -0,0 +1,49 @@
+package sc.plugin2024.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.converters.Converter
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import sc.api.plugins.CubeCoordinates
+import sc.plugin2024.Field
+import sc.plugin2024.Segment
+import sc.util.makeNode
+
+/** Writes the columns of a [Segment] as `field-array` elements,
+ * as the reflective converter did for the implicit array. */
+class SegmentConverter: Converter {
+    override fun canConvert(clazz: Class<*>?): Boolean =
+            clazz == Segment::class.java
+
+    override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
+        val segment = value as Segment
+        writer.addAttribute("direction", segment.direction.name)
+        writer.makeNode("center") { writeCoordinates(segment.center) }
+        segment.fields.forEach { column ->
+            writer.makeNode("field-array") {
+                column.forEach { field ->
+                    makeNode(FieldConverter.nodeName(field)) { FieldConverter.writeAttributes(field, this) }
+                }
+            }
+        }
+    }
+
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Segment {
+        val direction = reader.directionAttribute()
+        var center: CubeCoordinates? = null
+        val columns = ArrayList<Array<Field>>()
+        reader.forEachChild { name ->
+            when(name) {
+                "center" -> center = reader.readCoordinates()
+                "field-array" -> {
+                    val column = ArrayList<Field>()
+                    reader.forEachChild { column.add(FieldConverter.read(reader)) }
+                    columns.add(column.toTypedArray())
+                }
+            }
+        }
+        return Segment(direction, center ?: throw ConversionException("Segment without center"), columns.toTypedArray())
+    }
+}
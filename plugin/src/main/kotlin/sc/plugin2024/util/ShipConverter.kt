@@ -0,0 +1,44 @@
+package sc.plugin2024.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.converters.Converter
+import com.thoughtworks.xstream.converters.MarshallingContext
+import com.thoughtworks.xstream.converters.UnmarshallingContext
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import sc.api.plugins.CubeCoordinates
+import sc.api.plugins.Team
+import sc.plugin2024.Ship
+import sc.util.makeNode
+
+class ShipConverter: Converter {
+    override fun canConvert(clazz: Class<*>?): Boolean =
+            clazz == Ship::class.java
+
+    override fun marshal(value: Any, writer: HierarchicalStreamWriter, context: MarshallingContext) {
+        val ship = value as Ship
+        writer.addAttribute("team", ship.team.name)
+        writer.addAttribute("direction", ship.direction.name)
+        writer.addAttribute("speed", ship.speed.toString())
+        writer.addAttribute("coal", ship.coal.toString())
+        writer.addAttribute("passengers", ship.passengers.toString())
+        writer.addAttribute("freeTurns", ship.freeTurns.toString())
+        writer.addAttribute("points", ship.points.toString())
+        writer.makeNode("position") { writeCoordinates(ship.position) }
+    }
+
+    /** Like [Ship.readResolve], movement and free acceleration start fresh. */
+    override fun unmarshal(reader: HierarchicalStreamReader, context: UnmarshallingContext): Ship {
+        val team = Team.valueOf(reader.requireAttribute("team"))
+        val direction = reader.directionAttribute()
+        val speed = reader.intAttribute("speed")
+        val coal = reader.intAttribute("coal")
+        val passengers = reader.intAttribute("passengers")
+        val freeTurns = reader.intAttribute("freeTurns")
+        val points = reader.intAttribute("points")
+        var position: CubeCoordinates? = null
+        reader.forEachChild { if(it == "position") position = reader.readCoordinates() }
+        return Ship(position ?: throw ConversionException("Ship without position"),
+                team, direction, speed, coal, passengers, freeTurns, points)
+    }
+}
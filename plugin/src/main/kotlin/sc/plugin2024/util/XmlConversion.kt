@@ -0,0 +1,40 @@
+package sc.plugin2024.util
+
+import com.thoughtworks.xstream.converters.ConversionException
+import com.thoughtworks.xstream.io.HierarchicalStreamReader
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter
+import sc.api.plugins.CubeCoordinates
+import sc.api.plugins.CubeDirection
+
+/* Shared helpers of the hand-written converters.
+ * Missing numeric attributes default to 0, just like the reflective path. */
+
+internal fun HierarchicalStreamReader.intAttribute(name: String): Int =
+        getAttribute(name)?.toInt() ?: 0
+
+internal fun HierarchicalStreamReader.requireAttribute(name: String): String =
+        getAttribute(name) ?: throw ConversionException("Missing attribute '$name' on <$nodeName>")
+
+internal fun HierarchicalStreamReader.directionAttribute(name: String = "direction"): CubeDirection =
+        CubeDirection.valueOf(requireAttribute(name))
+
+/** Calls [action] with the name of each child node while positioned on it. */
+internal inline fun HierarchicalStreamReader.forEachChild(action: (String) -> Unit) {
+    while(hasMoreChildren()) {
+        moveDown()
+        action(nodeName)
+        moveUp()
+    }
+}
+
+internal fun HierarchicalStreamWriter.writeCoordinates(coordinates: CubeCoordinates) {
+    addAttribute("q", coordinates.q.toString())
+    addAttribute("r", coordinates.r.toString())
+    addAttribute("s", coordinates.s.toString())
+}
+
+internal fun HierarchicalStreamReader.readCoordinates(): CubeCoordinates {
+    val q = intAttribute("q")
+    val r = intAttribute("r")
+    return CubeCoordinates(q, r, getAttribute("s")?.toInt() ?: (-q - r))
+}
@@ -0,0 +1,83 @@
+package sc.plugin2024
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.ints.*
+import org.slf4j.LoggerFactory
+import sc.api.plugins.CubeDirection
+import sc.api.plugins.Team
+import sc.helpers.testXStream
+import sc.networking.WireFormat
+import sc.plugin2024.actions.Accelerate
+import sc.plugin2024.actions.Advance
+import sc.plugin2024.actions.Push
+import sc.plugin2024.actions.Turn
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.WelcomeMessage
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import kotlin.system.measureNanoTime
+
+class BinaryCodecsTest: FunSpec({
+    val logger = LoggerFactory.getLogger(BinaryCodecsTest::class.java)
+
+    fun encode(format: WireFormat, packets: List<Any>): ByteArray =
+            ByteArrayOutputStream().also { bytes ->
+                format.createOutputStream(bytes, testXStream).use { out ->
+                    packets.forEach { out.writeObject(it) }
+                }
+            }.toByteArray()
+
+    fun decode(format: WireFormat, data: ByteArray, count: Int): List<Any> {
+        val input: InputStream = ByteArrayInputStream(data)
+        WireFormat.detect(input) shouldBe format
+        val objects = format.createInputStream(input, testXStream)
+        return List(count) { objects.readObject() }
+    }
+
+    fun playedState(turns: Int) = GameState().apply {
+        repeat(turns) {
+            if(!isOver)
+                performMoveDirectly(getSensibleMoves().first())
+        }
+    }
+
+    test("moves survive a round trip") {
+        val moves = listOf(
+                Move(Accelerate(-2), Advance(3), Turn(CubeDirection.DOWN_LEFT)),
+                Move(Advance(-1), Push(CubeDirection.UP_RIGHT)),
+                Move(Turn(CubeDirection.LEFT)),
+        )
+        decode(WireFormat.BINARY, encode(WireFormat.BINARY, moves), moves.size) shouldBe moves
+    }
+
+    test("states match their XML round trip") {
+        val packets = listOf(0, 1, 7, 20).map { RoomPacket("room", MementoMessage(playedState(it), null)) } +
+                      RoomPacket("room", MoveRequest())
+        decode(WireFormat.BINARY, encode(WireFormat.BINARY, packets), packets.size) shouldBe
+                decode(WireFormat.XML, encode(WireFormat.XML, packets), packets.size)
+    }
+
+    test("other packets fall back to XML") {
+        val packets = listOf(RoomPacket("room", WelcomeMessage(Team.ONE)))
+        decode(WireFormat.BINARY, encode(WireFormat.BINARY, packets), 1) shouldBe packets
+    }
+
+    test("binary is smaller and faster than XML") {
+        val packets = List(200) { RoomPacket("room", MementoMessage(playedState(it % 30), null)) }
+        val sizes = WireFormat.values().associateWith { format ->
+            // warm up
+            repeat(3) { decode(format, encode(format, packets), packets.size) }
+            lateinit var data: ByteArray
+            val encodeTime = measureNanoTime { data = encode(format, packets) }
+            val decodeTime = measureNanoTime { decode(format, data, packets.size) }
+            logger.info("{}: {} bytes per state, encoding {}µs, decoding {}µs per state", format,
+                    data.size / packets.size, encodeTime / 1000 / packets.size, decodeTime / 1000 / packets.size)
+            data.size
+        }
+        sizes.getValue(WireFormat.BINARY) shouldBeLessThan sizes.getValue(WireFormat.XML) / 4
+    }
+})
@@ -0,0 +1,86 @@
+package sc.plugin2024
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.collections.*
+import io.kotest.matchers.ints.*
+import io.kotest.matchers.types.*
+import org.slf4j.LoggerFactory
+import sc.framework.CompactReplay
+import sc.framework.ReplayReader
+import sc.framework.ReplayWriter
+import sc.networking.XStreamProvider
+import sc.networking.clients.GameLoaderClient
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.StateChecksum
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import kotlin.random.Random
+
+class CompactReplayTest: FunSpec({
+    val logger = LoggerFactory.getLogger(CompactReplayTest::class.java)
+    val xStream = XStreamProvider.sharedPluginXStream
+
+    fun play(random: Random) = ArrayList<GameState>().also { states ->
+        val state = GameState()
+        states.add(state.clone())
+        while(!state.isOver) {
+            state.performMoveDirectly(state.getSensibleMoves().random(random))
+            states.add(state.clone())
+        }
+    }
+    // the first seed with a game close to the round limit, as games often end early with random moves
+    val states = (0..100).asSequence().map { play(Random(it)) }.first { it.size > 50 }
+    val packets = states.map { RoomPacket("room", MementoMessage(it, null)) }
+
+    fun write(compact: Boolean) = ByteArrayOutputStream().also { out ->
+        ReplayWriter({ out }, compact = compact, io = Runnable::run).apply {
+            packets.forEach { addMessage(it) }
+            close()
+        }
+    }.toByteArray()
+
+    test("states are reconstructed from the moves") {
+        val compact = write(true)
+        val full = write(false)
+        logger.info("Replay of {} states: {} bytes compact, {} bytes full", states.size, compact.size, full.size)
+        compact.size * 10 shouldBeLessThan full.size
+
+        val read = ReplayReader(compact.inputStream()).states().toList()
+        read.map { XStreamProvider.toUnredactedXML(xStream, it) } shouldBe states.map { XStreamProvider.toUnredactedXML(xStream, it) }
+    }
+
+    test("the first state keeps the hidden segments") {
+        val encoder = CompactReplay.Encoder(xStream)
+        val encoded = packets.flatMap { encoder.encode(it) }.map { xStream.fromXML(it) as RoomPacket }
+        val first = encoded.first().data.shouldBeInstanceOf<MementoMessage>().state.shouldBeInstanceOf<GameState>()
+        first.board.segments shouldBe states.first().board.segments
+        first shouldBe states.first()
+    }
+
+    test("mismatching checksums are detected") {
+        val encoder = CompactReplay.Encoder(xStream, checksumInterval = 1)
+        val encoded = packets.flatMap { encoder.encode(it) }
+        val tampered = encoded.map { xml ->
+            val packet = xStream.fromXML(xml) as RoomPacket
+            packet.data.let { if(it is StateChecksum) RoomPacket(packet.roomId, it.copy(crc = it.crc + 1)) else packet } to xml
+        }
+        tampered.map { it.first.data }.filterIsInstance<StateChecksum>().shouldNotBeEmpty()
+        tampered.first().first.data.shouldBeInstanceOf<MementoMessage>()
+
+        val decoder = CompactReplay.Decoder(xStream)
+        shouldThrow<IOException> {
+            tampered.forEach { decoder.decode(it.first.data) }
+        }
+
+        // the first state is kept as written, as it contains what the players can't see
+        val replay = tampered.joinToString("\n", "<protocol>\n", "\n</protocol>") { (packet, xml) ->
+            if(packet.data is StateChecksum) xStream.toXML(packet) else xml
+        }
+        shouldThrow<IOException> {
+            GameLoaderClient(replay.byteInputStream()).getHistory()
+        }
+    }
+})
@@ -0,0 +1,74 @@
+package sc.plugin2024
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.longs.shouldBeLessThan
+import org.slf4j.LoggerFactory
+import sc.api.plugins.CubeDirection
+import sc.helpers.testXStream
+import sc.networking.XStreamProvider
+import sc.plugin2024.actions.Accelerate
+import sc.plugin2024.actions.Advance
+import sc.plugin2024.actions.Push
+import sc.plugin2024.actions.Turn
+import sc.protocol.LobbyProtocol
+import kotlin.system.measureNanoTime
+
+class ConverterTest: FunSpec({
+    val logger = LoggerFactory.getLogger(ConverterTest::class.java)
+
+    /** Same classes, but without the hand-written converters. */
+    val reflective = XStreamProvider.getBasicXStream().also {
+        LobbyProtocol.registerAdditionalMessages(it, XStreamClasses().classesToRegister)
+    }
+
+    fun playedState(turns: Int) = GameState().apply {
+        repeat(turns) {
+            if(!isOver)
+                performMoveDirectly(getSensibleMoves().first())
+        }
+    }
+
+    val states = listOf(0, 1, 2, 7, 20, 40).map { playedState(it) }
+
+    test("states are written and read like before") {
+        states.forEach { state ->
+            val xml = reflective.toXML(state)
+            testXStream.toXML(state) shouldBe xml
+            testXStream.fromXML(xml) shouldBe reflective.fromXML(xml)
+            testXStream.fromXML(xml) shouldBe state
+        }
+    }
+
+    test("moves and actions are written and read like before") {
+        val move = Move(arrayListOf(Accelerate(-2), Advance(3), Push(CubeDirection.UP_RIGHT), Turn(CubeDirection.DOWN_LEFT)))
+        // reflection annotates other list implementations with a class attribute
+        val otherList = Move(Accelerate(1), Advance(2))
+        (move.actions + move + otherList).forEach { obj ->
+            val xml = reflective.toXML(obj)
+            testXStream.toXML(obj) shouldBe xml
+            testXStream.fromXML(xml) shouldBe obj
+        }
+    }
+
+    // timing depends on the machine, so this only runs as a load test
+    test("hand-written converters outpace reflection").config(enabled = System.getProperty("loadtest") != null) {
+        val packets = List(200) { states[it % states.size] }
+        val times = listOf("reflective" to reflective, "hand-written" to testXStream).map { (name, xStream) ->
+            // warm up
+            repeat(5) { packets.forEach { xStream.fromXML(xStream.toXML(it)) } }
+            // the best of several rounds is least affected by other load on the machine
+            val (writeTime, readTime) = List(5) {
+                lateinit var xml: List<String>
+                val writeTime = measureNanoTime { xml = packets.map { xStream.toXML(it) } }
+                val readTime = measureNanoTime { xml.forEach { xStream.fromXML(it) } }
+                writeTime to readTime
+            }.minByOrNull { it.first + it.second }!!
+            logger.info("{}: writing {}µs, reading {}µs per state", name,
+                    writeTime / 1000 / packets.size, readTime / 1000 / packets.size)
+            writeTime + readTime
+        }
+        // generous tolerance against timing noise, the converters are expected to be several times faster
+        times[1] shouldBeLessThan times[0] * 3 / 2
+    }
+})
@@ -5,6 +5,7 @@ import sc.api.plugins.host.IGameListener
 import sc.framework.plugins.Player
 import sc.shared.InvalidMoveException
 import sc.shared.PlayerScore
+import java.util.concurrent.Executor
 
 interface IGameInstance {
     /** @return the player that joined. */
@@ -20,6 +21,19 @@ interface IGameInstance {
      */
     @Throws(GameLogicException::class, InvalidMoveException::class)
     fun onAction(fromPlayer: Player, move: IMove)
+    
+    /** Like [onAction], but the time of the player is measured until [receivedAt],
+     * so that server-side queuing does not count against it.
+     *
+     * @param receivedAt [System.nanoTime] at which the move was read from the network
+     */
+    @Throws(GameLogicException::class, InvalidMoveException::class)
+    fun onAction(fromPlayer: Player, move: IMove, receivedAt: Long) = onAction(fromPlayer, move)
+    
+    /** Sets where events the game triggers by itself, such as timeouts, are processed,
+     * so that they don't interleave with [onAction]. */
+    fun setEventExecutor(executor: Executor) {}
+    
     fun addGameListener(listener: IGameListener)
     fun removeGameListener(listener: IGameListener)
 
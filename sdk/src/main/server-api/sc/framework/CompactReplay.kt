@@ -0,0 +1,91 @@
+package sc.framework
+
+import com.thoughtworks.xstream.XStream
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.api.plugins.TwoPlayerGameState
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomMessage
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.StateChecksum
+import java.io.IOException
+import java.util.zip.CRC32
+
+/** Compact replays store the first state once and afterwards just the moves leading to the next states,
+ * with a [StateChecksum] every [Encoder.checksumInterval] moves.
+ *
+ * States serialize only what the players may see, e.g. the hidden segments of a board are missing,
+ * so the first state is written by [XStreamProvider.toUnredactedXML].
+ * The [Encoder] predicts every state exactly like the [Decoder] will,
+ * and only where a prediction fails it writes the full state again as a keyframe.
+ * Thus reconstruction is verified while writing and does not depend on plugin specifics. */
+object CompactReplay {
+    /** @return CRC32 of the serialized state */
+    @JvmStatic
+    fun checksum(xml: String): Long =
+            CRC32().apply { update(xml.toByteArray(Charsets.UTF_8)) }.value
+
+    /** @return the state after [move], or null if [state] can't perform moves */
+    @Suppress("UNCHECKED_CAST")
+    private fun perform(state: IGameState, move: IMove): IGameState? =
+            (state as? TwoPlayerGameState<IMove>)?.performMove(move)
+
+    /** Replaces [MementoMessage]s by moves where possible, not thread-safe.
+     * A state is serialized only for a keyframe or a checksum, not on every move. */
+    class Encoder(private val xStream: XStream, private val checksumInterval: Int = 10) {
+        /** The state as the [Decoder] will know it. */
+        private var predicted: IGameState? = null
+        private var movesSinceChecksum = 0
+
+        /** @return the XML of the packets to write instead of [packet] */
+        fun encode(packet: RoomPacket): List<String> {
+            val state = (packet.data as? MementoMessage)?.state ?: return listOf(xStream.toXML(packet))
+            val move = (state as? TwoPlayerGameState<*>)?.lastMove
+            val next = move?.let { predicted?.let { previous -> runCatching { perform(previous, move) }.getOrNull() } }
+            if(move != null && next != null && matches(next, state)) {
+                predicted = next
+                val moveXml = xStream.toXML(RoomPacket(packet.roomId, move))
+                if(++movesSinceChecksum < checksumInterval)
+                    return listOf(moveXml)
+                movesSinceChecksum = 0
+                return listOf(moveXml, xStream.toXML(RoomPacket(packet.roomId, StateChecksum(state.turn, checksum(xStream.toXML(state))))))
+            }
+            val xml = XStreamProvider.toUnredactedXML(xStream, packet)
+            // continue from the state as it will be read
+            predicted = ((xStream.fromXML(xml) as RoomPacket).data as MementoMessage).state
+            movesSinceChecksum = 0
+            return listOf(xml)
+        }
+
+        /** Equality is cheap, but may differ in fields which are not serialized, so the full XML decides then. */
+        private fun matches(predicted: IGameState, state: IGameState) =
+                predicted == state ||
+                XStreamProvider.toUnredactedXML(xStream, predicted) == XStreamProvider.toUnredactedXML(xStream, state)
+    }
+
+    /** Reconstructs the states of a replay, which may be compact, not thread-safe.
+     * A returned state must not be modified, as the next one is derived from it. */
+    class Decoder(private val xStream: XStream) {
+        private var state: IGameState? = null
+
+        /** @return the state after [message], null if it does not change the state
+         * @throws IOException if the replay can't be reconstructed or a checksum doesn't match */
+        fun decode(message: RoomMessage): IGameState? =
+                when(message) {
+                    is MementoMessage -> message.state.also { state = it }
+                    is IMove -> {
+                        val previous = state ?: throw IOException("Replay contains a move before the first state")
+                        (perform(previous, message) ?: throw IOException("Can't replay moves on $previous"))
+                                .also { state = it }
+                    }
+                    is StateChecksum -> {
+                        val current = state
+                        if(current?.turn != message.turn || checksum(xStream.toXML(current)) != message.crc)
+                            throw IOException("Reconstructed state does not match the replay at turn ${message.turn}")
+                        null
+                    }
+                    else -> null
+                }
+    }
+}
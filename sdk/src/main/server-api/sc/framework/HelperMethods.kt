@@ -29,11 +29,13 @@ object HelperMethods {
      *
      * @param gameId  UUID of the plugin
      * @param names descriptor of player slot
+     * @param directory where replays are saved
      *
      * @return name of replay
      */
     @JvmStatic
-    fun getReplayFilename(gameId: String, names: List<String>): String =
-            "replays/replay_${gameId}_${currentDateTime}_" +
+    @JvmOverloads
+    fun getReplayFilename(gameId: String, names: List<String>, directory: String = "replays"): String =
+            "$directory/replay_${gameId}_${currentDateTime}_" +
             "${names.joinToString("_") { it.replace(' ', '_') }}.xml"
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package sc.framework
+
+import com.thoughtworks.xstream.XStream
+import sc.api.plugins.IGameState
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomPacket
+import java.io.DataOutput
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/** Index of the states in an uncompressed replay, written by [ReplayWriter] next to the replay.
+ * Every state has an entry with its turn and the position of its packet in the replay,
+ * so a single state can be decoded without parsing the ones before it.
+ * Both files are memory-mapped, so large replays are only paged in where they are read. */
+class ReplayIndex private constructor(
+        private val index: ByteBuffer,
+        private val replay: ByteBuffer,
+        private val xStream: XStream,
+) {
+    /** Number of indexed states. */
+    val size: Int = (index.limit() - HEADER_SIZE) / ENTRY_SIZE
+
+    /** @return the turn of the state at [entry] */
+    fun turnAt(entry: Int): Int =
+            index.getInt(HEADER_SIZE + entry * ENTRY_SIZE)
+
+    /** Finds the first state with a turn of at least [turn], like [sc.networking.clients.GameLoaderClient.getTurn].
+     * @throws NoSuchElementException if the replay ends before that turn */
+    fun getTurn(turn: Int): IGameState {
+        // turns never decrease within a replay
+        var low = 0
+        var high = size
+        while(low < high) {
+            val mid = (low + high) ushr 1
+            if(turnAt(mid) < turn) low = mid + 1 else high = mid
+        }
+        if(low == size)
+            throw NoSuchElementException("Replay has no state at turn $turn")
+        return getState(low)
+    }
+
+    /** Decodes the state at [entry]. */
+    fun getState(entry: Int): IGameState {
+        val position = HEADER_SIZE + entry * ENTRY_SIZE
+        val offset = index.getLong(position + 4)
+        val length = index.getInt(position + 12)
+        if(offset < 0 || offset + length > replay.limit())
+            throw IOException("Index entry $entry points outside of the replay")
+        val bytes = ByteArray(length)
+        // a duplicate has its own position, so states can be read concurrently
+        replay.duplicate().apply { position(offset.toInt()) }.get(bytes)
+        val packet = xStream.fromXML(String(bytes, Charsets.UTF_8)) as RoomPacket
+        return (packet.data as MementoMessage).state
+    }
+
+    companion object {
+        /** Appended to the name of the replay to get the name of its index. */
+        const val SUFFIX = ".idx"
+
+        private const val MAGIC = 0x53435249 // SCRI
+        private const val VERSION = 1
+        private const val HEADER_SIZE = 8
+        /** turn (int), offset (long) and length (int) of a state. */
+        private const val ENTRY_SIZE = 16
+
+        @JvmStatic
+        fun fileFor(replay: File) = File(replay.path + SUFFIX)
+
+        /** Maps the index of [replay] and the replay itself.
+         * @return null if the replay has no index
+         * @throws IOException if the index can't be read or is of an unknown version */
+        @JvmStatic
+        @JvmOverloads
+        fun open(replay: File, xStream: XStream = XStreamProvider.sharedPluginXStream): ReplayIndex? {
+            val indexFile = fileFor(replay)
+            if(!indexFile.isFile)
+                return null
+            val index = map(indexFile)
+            if(index.limit() < HEADER_SIZE || index.getInt(0) != MAGIC)
+                throw IOException("$indexFile is no replay index")
+            if(index.getInt(4) != VERSION)
+                throw IOException("$indexFile has unsupported version ${index.getInt(4)}")
+            return ReplayIndex(index, map(replay), xStream)
+        }
+
+        private fun map(file: File): ByteBuffer =
+                RandomAccessFile(file, "r").use { it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length()) }
+
+        internal fun writeHeader(out: DataOutput) {
+            out.writeInt(MAGIC)
+            out.writeInt(VERSION)
+        }
+
+        internal fun writeEntry(out: DataOutput, turn: Int, offset: Long, length: Int) {
+            out.writeInt(turn)
+            out.writeLong(offset)
+            out.writeInt(length)
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package sc.framework
+
+import com.thoughtworks.xstream.XStream
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.StateChecksum
+import sc.shared.GameResult
+import java.io.BufferedInputStream
+import java.io.Closeable
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.util.zip.GZIPInputStream
+
+/** Reads the states of a replay on the calling thread, parsing only as far as they are requested.
+ * States of a [CompactReplay] are reconstructed, they must not be modified while reading on.
+ * Readers share nothing but the thread-safe [XStream],
+ * so separate replays can be read in parallel, e.g. from a parallel stream over a directory.
+ *
+ * The input is closed once the end of the replay is reached or [close] is called. */
+class ReplayReader @JvmOverloads constructor(
+        private val input: InputStream,
+        xStream: XStream = XStreamProvider.sharedPluginXStream,
+): Iterator<IGameState>, Closeable {
+    /** Reads a plain or gzip-compressed (`.gz`) replay file. */
+    @JvmOverloads
+    constructor(file: File, xStream: XStream = XStreamProvider.sharedPluginXStream):
+            this(BufferedInputStream(file.inputStream().let { if(file.extension == "gz") GZIPInputStream(it) else it }), xStream)
+
+    private val packets = xStream.createObjectInputStream(input)
+    private val decoder = CompactReplay.Decoder(xStream)
+    private var next: IGameState? = null
+    private var done = false
+
+    /** The result of the game, available once all states have been read. */
+    var result: GameResult? = null
+        private set
+
+    override fun hasNext(): Boolean {
+        while(next == null && !done) {
+            val packet = try {
+                packets.readObject()
+            } catch(e: EOFException) {
+                close()
+                break
+            }
+            if(packet !is RoomPacket)
+                throw IOException("Can't extract replay from $packet")
+            when(val message = packet.data) {
+                is MementoMessage, is IMove, is StateChecksum -> next = decoder.decode(message)
+                is GameResult -> result = message
+                else -> logger.warn("Unknown message in replay: {}", message)
+            }
+        }
+        return next != null
+    }
+
+    override fun next(): IGameState {
+        if(!hasNext())
+            throw NoSuchElementException("End of replay")
+        return next!!.also { next = null }
+    }
+
+    /** @return the remaining states as a lazy sequence, which can only be iterated once */
+    fun states(): Sequence<IGameState> = Sequence { this }.constrainOnce()
+
+    override fun close() {
+        done = true
+        packets.close()
+        input.close()
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(ReplayReader::class.java)
+    }
+}
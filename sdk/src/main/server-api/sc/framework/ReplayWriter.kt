@@ -0,0 +1,168 @@
+package sc.framework
+
+import com.thoughtworks.xstream.XStream
+import org.slf4j.LoggerFactory
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomPacket
+import java.io.DataOutputStream
+import java.io.OutputStream
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/** Streams a replay in the format of [ReplayListener] while the game is running,
+ * so the history is not kept in memory and the end of the game doesn't wait for the disk.
+ *
+ * Messages are serialized right away on the thread adding them, which has to add them one after another,
+ * so they may be modified afterwards. Only their bytes are written on [io], which has to run tasks one after another.
+ * While [MAX_PENDING] messages of a replay wait for [io], further states are dropped and counted in [droppedStates]
+ * instead of blocking the thread adding them, which is usually shared by many rooms.
+ * Other messages, such as the result, are always kept. Thus memory stays bounded however many replays share [io].
+ *
+ * @param open creates the target on the first message, on the [io] thread
+ * @param openIndex if given, creates the target for the [ReplayIndex] of the replay,
+ *                  which requires [open] to write the bytes unchanged
+ * @param compact whether to write a [CompactReplay], which can't be indexed
+ */
+class ReplayWriter @JvmOverloads constructor(
+        private val open: Callable<OutputStream>,
+        private val openIndex: Callable<OutputStream>? = null,
+        compact: Boolean = false,
+        private val xStream: XStream = XStreamProvider.sharedPluginXStream,
+        private val io: Executor = sharedIo,
+) {
+    /** Only accessed from [io]. */
+    private var out: OutputStream? = null
+    private var index: DataOutputStream? = null
+    private var offset = 0L
+    @Volatile
+    private var failed = false
+    private val closed = CompletableFuture<Void?>()
+    /** Only accessed by the thread adding messages. */
+    private val encoder = if(compact) CompactReplay.Encoder(xStream) else null
+    /** Messages waiting for [io]. */
+    private val pending = AtomicInteger()
+
+    /** States which were not written as too many messages waited for [io]. */
+    @Volatile
+    var droppedStates = 0
+        private set
+
+    init {
+        require(!compact || openIndex == null) { "Compact replays can't be indexed" }
+    }
+
+    fun addMessage(message: Any) {
+        if(failed)
+            return
+        // a compact replay continues with a full state after a gap
+        if(pending.get() >= MAX_PENDING && ((message as? RoomPacket)?.data is MementoMessage)) {
+            droppedStates++
+            return
+        }
+        val entries = try {
+            if(encoder != null && message is RoomPacket)
+                encoder.encode(message).map { Entry(it.toByteArray(Charsets.UTF_8), null) }
+            else
+                listOf(serialize(message))
+        } catch(e: Exception) {
+            fail(e)
+            return
+        }
+        pending.incrementAndGet()
+        io.execute {
+            try {
+                write { out -> entries.forEach { writeEntry(out, it) } }
+            } finally {
+                pending.decrementAndGet()
+            }
+        }
+    }
+
+    /** A serialized message with the turn of its state, if it has one. */
+    private class Entry(val xml: ByteArray, val turn: Int?)
+
+    private fun serialize(message: Any) =
+            Entry(xStream.toXML(message).toByteArray(Charsets.UTF_8),
+                    ((message as? RoomPacket)?.data as? MementoMessage)?.state?.turn)
+
+    private fun writeEntry(out: OutputStream, entry: Entry) {
+        index?.let { index ->
+            entry.turn?.let { ReplayIndex.writeEntry(index, it, offset, entry.xml.size) }
+        }
+        out.write(entry.xml)
+        out.write(NEWLINE)
+        offset += entry.xml.size + NEWLINE.size
+    }
+
+    /** Finishes the replay after all added messages have been written.
+     * @return completes once the replay is closed */
+    fun close(): CompletableFuture<Void?> {
+        if(droppedStates > 0)
+            logger.warn("Dropped {} states of a replay, as the disk could not keep up", droppedStates)
+        io.execute {
+            write { it.write(FOOTER) }
+            try {
+                index.use { out?.close() }
+            } catch(e: Exception) {
+                logger.error("Failed to close replay", e)
+            }
+            closed.complete(null)
+        }
+        return closed
+    }
+
+    private inline fun write(action: (OutputStream) -> Unit) {
+        if(failed)
+            return
+        try {
+            action(out ?: openReplay())
+        } catch(e: Exception) {
+            fail(e)
+        }
+    }
+
+    private fun fail(e: Exception) {
+        // one log entry per replay is enough
+        if(failed)
+            return
+        failed = true
+        logger.error("Failed to write replay, discarding the remaining messages", e)
+    }
+
+    private fun openReplay(): OutputStream {
+        val out = open.call()
+        this.out = out
+        out.write(HEADER)
+        offset = HEADER.size.toLong()
+        try {
+            index = openIndex?.call()?.let { DataOutputStream(it) }?.also { ReplayIndex.writeHeader(it) }
+        } catch(e: Exception) {
+            logger.warn("Failed to create replay index, saving the replay without it", e)
+        }
+        return out
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(ReplayWriter::class.java)
+
+        private val HEADER = "<protocol>\n".toByteArray()
+        private val NEWLINE = "\n".toByteArray()
+        private val FOOTER = "</protocol>".toByteArray()
+
+        /** Messages of a replay which may wait to be written before [addMessage] drops states. */
+        const val MAX_PENDING = 64
+
+        /** Writes the replays of all games, one task after another. */
+        private val sharedIo: Executor by lazy {
+            ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES, LinkedBlockingQueue()) { task ->
+                ThreadModel.current.newThread("ReplayWriter", true, task)
+            }.apply { allowCoreThreadTimeOut(true) }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package sc.framework
+
+import org.slf4j.LoggerFactory
+import java.lang.reflect.Method
+
+/** Determines how the long-running threads of the framework are created:
+ * the receive threads of [sc.networking.clients.XStreamClient],
+ * the shared timer of [sc.framework.plugins.TimeoutScheduler] and the services of the server.
+ *
+ * The model in use can be chosen via the system property [PROPERTY] or by setting [current]. */
+enum class ThreadModel {
+    /** Regular operating system threads. */
+    PLATFORM {
+        override fun newThread(name: String, daemon: Boolean, task: Runnable): Thread =
+                Thread(task, name).apply { isDaemon = daemon }
+    },
+    /** Virtual threads (Java 21+), falling back to [PLATFORM] on older JVMs.
+     * Virtual threads are always daemon threads, so they do not keep the JVM alive. */
+    VIRTUAL {
+        override fun newThread(name: String, daemon: Boolean, task: Runnable): Thread =
+                VirtualThreads.newThread(name, task) ?: PLATFORM.newThread(name, daemon, task)
+    };
+
+    /** Creates a new, unstarted thread. */
+    abstract fun newThread(name: String, daemon: Boolean, task: Runnable): Thread
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(ThreadModel::class.java)
+
+        /** System property to preselect the [current] model. */
+        const val PROPERTY = "sc.threadModel"
+
+        /** Whether the running JVM supports virtual threads. */
+        @JvmStatic
+        val isVirtualSupported: Boolean
+            get() = VirtualThreads.supported
+
+        /** The model used for newly created threads. */
+        @JvmStatic
+        var current: ThreadModel = parse(System.getProperty(PROPERTY))
+            set(value) {
+                if (value == VIRTUAL && !isVirtualSupported)
+                    logger.warn("Virtual threads are not supported by this JVM, falling back to platform threads")
+                field = value
+            }
+
+        /** Parses a model name case-insensitively, using [PLATFORM] for `null` or unknown values. */
+        @JvmStatic
+        fun parse(value: String?): ThreadModel =
+                value?.let { name ->
+                    values().find { it.name.equals(name.trim(), true) }
+                            ?: PLATFORM.also { logger.warn("Unknown thread model '{}', using {}", name, it) }
+                } ?: PLATFORM
+    }
+}
+
+/** Accesses `Thread.ofVirtual()` via reflection since we compile against Java 8. */
+private object VirtualThreads {
+    private val ofVirtual: Method?
+    private val name: Method?
+    private val unstarted: Method?
+
+    init {
+        var methods: Triple<Method, Method, Method>? = null
+        try {
+            val builder = Class.forName("java.lang.Thread\$Builder")
+            methods = Triple(
+                    Thread::class.java.getMethod("ofVirtual"),
+                    builder.getMethod("name", String::class.java),
+                    builder.getMethod("unstarted", Runnable::class.java))
+        } catch (e: ReflectiveOperationException) {
+        }
+        ofVirtual = methods?.first
+        name = methods?.second
+        unstarted = methods?.third
+    }
+
+    val supported: Boolean
+        get() = ofVirtual != null
+
+    fun newThread(threadName: String, task: Runnable): Thread? {
+        val builder = ofVirtual?.invoke(null) ?: return null
+        name!!.invoke(builder, threadName)
+        return unstarted!!.invoke(builder, task) as Thread
+    }
+}
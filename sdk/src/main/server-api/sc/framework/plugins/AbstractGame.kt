@@ -8,6 +8,7 @@ import sc.api.plugins.exceptions.TooManyPlayersException
 import sc.api.plugins.host.IGameListener
 import sc.protocol.room.WelcomeMessage
 import sc.shared.*
+import java.util.concurrent.Executor
 
 abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pausable {
     val logger = LoggerFactory.getLogger(this::class.java)
@@ -23,6 +24,8 @@ abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pau
     
     private var moveRequestTimeout: ActionTimeout? = null
     
+    private var eventExecutor = Executor { it.run() }
+    
     override val winner: ITeam?
         get() = players.singleOrNull { !it.hasViolated() && !it.hasLeft() }?.team
                 ?: checkWinCondition()?.also { logger.debug("No Winner via violation, WinCondition: {}", it) }?.winner
@@ -52,12 +55,16 @@ abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pau
      * @throws InvalidMoveException when the given Move is not possible
      */
     @Throws(GameLogicException::class, InvalidMoveException::class)
-    override fun onAction(fromPlayer: Player, move: IMove) {
+    override fun onAction(fromPlayer: Player, move: IMove) =
+            onAction(fromPlayer, move, System.nanoTime())
+    
+    @Throws(GameLogicException::class, InvalidMoveException::class)
+    override fun onAction(fromPlayer: Player, move: IMove, receivedAt: Long) {
         if(fromPlayer != activePlayer)
             throw NotYourTurnException(activePlayer, fromPlayer, move)
         moveRequestTimeout?.let { timer ->
             moveRequestTimeout = null
-            timer.stop()
+            timer.stop(receivedAt)
             logger.info("Time needed for move: " + timer.timeDiff)
             if(timer.didTimeout()) {
                 logger.warn("Client hit soft-timeout.")
@@ -189,22 +196,28 @@ abstract class AbstractGame(override val pluginUUID: String): IGameInstance, Pau
     protected fun requestMove(player: Player) {
         val timeout: ActionTimeout = if(player.canTimeout) getTimeoutFor(player) else ActionTimeout(false)
         
-        // Signal the JVM to do a GC run now and lower the propability that the GC
-        // runs when the player sends back its move, resulting in disqualification
-        // because of soft timeout.
-        System.gc()
-        
         moveRequestTimeout = timeout
         timeout.start {
-            logger.warn("Player $player reached the timeout of ${timeout.hardTimeout}ms")
-            player.hardTimeout = true
-            stop()
+            eventExecutor.execute {
+                // the move may have been processed while this event was queued
+                if(moveRequestTimeout === timeout) {
+                    moveRequestTimeout = null
+                    timeout.stop()
+                    logger.warn("Player $player reached the timeout of ${timeout.hardTimeout}ms")
+                    player.hardTimeout = true
+                    stop()
+                }
+            }
         }
         
         logger.info("Sending MoveRequest to player $activePlayer")
         player.requestMove()
     }
     
+    override fun setEventExecutor(executor: Executor) {
+        eventExecutor = executor
+    }
+    
     protected open fun getTimeoutFor(player: Player) =
             ActionTimeout(true, Constants.HARD_TIMEOUT, Constants.SOFT_TIMEOUT)
     
@@ -3,10 +3,15 @@ package sc.framework.plugins;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-// TODO We can probably utilise an inbuilt class instead.
-/** Tracks timeouts in Milliseconds. */
+import java.util.concurrent.TimeUnit;
+
+/** Tracks timeouts in Milliseconds.
+ * The hard timeout is scheduled on the shared {@link TimeoutScheduler},
+ * time is measured with {@link System#nanoTime()}. */
 public class ActionTimeout {
   static final Logger logger = LoggerFactory.getLogger(ActionTimeout.class);
+  /** Initialized with the class, so that pauses before the first move request are known. */
+  private static final GcPauseTracker gcPauses = GcPauseTracker.getDefault();
 
   private final long softTimeoutInMilliseconds;
 
@@ -14,12 +19,12 @@ public class ActionTimeout {
 
   private final boolean canTimeout;
 
-  private Thread timeoutThread;
+  private TimeoutScheduler.Handle timeoutHandle;
 
   private Status status = Status.NEW;
 
-  private long startTimestamp = 0;
-  private long stopTimestamp = 0;
+  private long startNanos = 0;
+  private long stopNanos = 0;
 
   private static final int DEFAULT_HARD_TIMEOUT = 10000;
   private static final int DEFAULT_SOFT_TIMEOUT = 5000;
@@ -68,51 +73,68 @@ public class ActionTimeout {
       throw new IllegalStateException("Timeout was not stopped.");
     }
 
-    return stopTimestamp - startTimestamp;
+    return TimeUnit.NANOSECONDS.toMillis(stopNanos - startNanos);
+  }
+
+  /** @return time in milliseconds the JVM spent in garbage collection pauses while this timeout ran */
+  private long getGcPauseTime() {
+    return TimeUnit.NANOSECONDS.toMillis(gcPauses.pausedNanosBetween(startNanos, stopNanos));
   }
 
+  /** Whether the soft timeout was exceeded, not counting garbage collection pauses of the server. */
   public synchronized boolean didTimeout() {
-    return this.canTimeout() && this.getTimeDiff() > this.softTimeoutInMilliseconds;
+    if (!this.canTimeout() || this.getTimeDiff() <= this.softTimeoutInMilliseconds)
+      return false;
+    long gcPause = getGcPauseTime();
+    if (gcPause > 0)
+      logger.info("Not counting {}ms of GC pauses against the soft timeout", gcPause);
+    return this.getTimeDiff() - gcPause > this.softTimeoutInMilliseconds;
+  }
+
+  public void stop() {
+    stop(System.nanoTime());
   }
 
-  public synchronized void stop() {
+  /** Stops the timeout at the given point in time,
+   * which may lie in the past if the action was queued on the server.
+   * If it was already stopped later than that, the earlier time wins.
+   * @param stopNanos {@link System#nanoTime()} at which the action arrived */
+  public synchronized void stop(long stopNanos) {
     if (this.status == Status.NEW) {
       throw new IllegalStateException("Timeout was never started.");
     }
 
     if (this.status == Status.STOPPED) {
-      logger.warn("Redundant stop: Timeout was already stopped.");
+      if (stopNanos < this.stopNanos)
+        this.stopNanos = Math.max(stopNanos, this.startNanos);
+      else
+        logger.warn("Redundant stop: Timeout was already stopped.");
       return;
     }
 
-    this.stopTimestamp = System.currentTimeMillis();
+    this.stopNanos = Math.max(stopNanos, this.startNanos);
     this.status = Status.STOPPED;
 
-    if (this.timeoutThread != null) {
-      this.timeoutThread.interrupt();
+    if (this.timeoutHandle != null) {
+      this.timeoutHandle.cancel();
     }
   }
 
+  /** Starts measuring and schedules the hard timeout.
+   * @param onTimeout run on the timer thread once the hard timeout passed without a stop.
+   *                  It does not stop this timeout, as an action received in time may still be queued,
+   *                  so whoever processes the actions has to decide and stop it. */
   public synchronized void start(final Runnable onTimeout) {
     if (this.status != Status.NEW) {
       throw new IllegalStateException("Redundant start: was already started!");
     }
 
+    this.startNanos = System.nanoTime();
+    this.status = Status.STARTED;
+
     if (canTimeout()) {
-      this.timeoutThread = new Thread(() -> {
-        try {
-          Thread.sleep(getHardTimeout());
-          stop();
-          onTimeout.run();
-        } catch (InterruptedException e) {
-          logger.info("HardTimout wasn't reached.");
-        }
-      });
-      this.timeoutThread.start();
+      this.timeoutHandle = TimeoutScheduler.getDefault().schedule(getHardTimeout(), TimeUnit.MILLISECONDS, onTimeout);
     }
-
-    this.startTimestamp = System.currentTimeMillis();
-    this.status = Status.STARTED;
   }
 
   @Override
@@ -120,8 +142,8 @@ public class ActionTimeout {
     return "ActionTimeout{" +
         "canTimeout=" + canTimeout +
         ", status=" + status +
-        ", start=" + startTimestamp +
-        ", stop=" + stopTimestamp +
+        ", start=" + startNanos +
+        ", stop=" + stopNanos +
         '}';
   }
 }
@@ -0,0 +1,85 @@
+package sc.framework.plugins;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/** Remembers the recent garbage collection pauses of this JVM,
+ * so that an {@link ActionTimeout} does not blame a player for the server stopping the world.
+ * Pause times are reported via {@link GarbageCollectorMXBean} notifications
+ * and converted to the {@link System#nanoTime()} scale. */
+public final class GcPauseTracker {
+  private static final Logger logger = LoggerFactory.getLogger(GcPauseTracker.class);
+  private static final GcPauseTracker DEFAULT = new GcPauseTracker(256).listen();
+
+  public static GcPauseTracker getDefault() {
+    return DEFAULT;
+  }
+
+  /** Ring buffer of pause start and end times in nanoseconds. */
+  private final long[] starts;
+  private final long[] ends;
+  private int next = 0;
+  private int size = 0;
+
+  /** Difference between {@link System#nanoTime()} and the JVM uptime in nanoseconds. */
+  private final long uptimeOffset =
+      System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+
+  GcPauseTracker(int capacity) {
+    starts = new long[capacity];
+    ends = new long[capacity];
+  }
+
+  private GcPauseTracker listen() {
+    int emitters = 0;
+    for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (bean instanceof NotificationEmitter) {
+        ((NotificationEmitter) bean).addNotificationListener((notification, handback) -> onNotification(notification), null, null);
+        emitters++;
+      }
+    }
+    if (emitters == 0)
+      logger.warn("No GC notifications available, pauses will not be accounted for timeouts");
+    return this;
+  }
+
+  private void onNotification(Notification notification) {
+    if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+      return;
+    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+    // concurrent collectors report their cycles as well, which do not stop the application
+    if (info.getGcAction().contains("cycle"))
+      return;
+    GcInfo gc = info.getGcInfo();
+    record(uptimeOffset + TimeUnit.MILLISECONDS.toNanos(gc.getStartTime()),
+        uptimeOffset + TimeUnit.MILLISECONDS.toNanos(gc.getEndTime()));
+  }
+
+  synchronized void record(long startNanos, long endNanos) {
+    starts[next] = startNanos;
+    ends[next] = endNanos;
+    next = (next + 1) % starts.length;
+    if (size < starts.length)
+      size++;
+  }
+
+  /** @return total pause time in nanoseconds overlapping the given {@link System#nanoTime()} interval */
+  public synchronized long pausedNanosBetween(long fromNanos, long toNanos) {
+    long paused = 0;
+    for (int i = 0; i < size; i++) {
+      long overlap = Math.min(ends[i], toNanos) - Math.max(starts[i], fromNanos);
+      if (overlap > 0)
+        paused += overlap;
+    }
+    return paused;
+  }
+}
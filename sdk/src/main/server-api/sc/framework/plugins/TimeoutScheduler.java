@@ -0,0 +1,102 @@
+package sc.framework.plugins;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc.framework.ThreadModel;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Shared timer of all {@link ActionTimeout}s,
+ * so that a move request does not need a thread of its own. */
+public final class TimeoutScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(TimeoutScheduler.class);
+  private static final TimeoutScheduler DEFAULT = new TimeoutScheduler();
+
+  public static TimeoutScheduler getDefault() {
+    return DEFAULT;
+  }
+
+  private final ScheduledThreadPoolExecutor executor;
+
+  private final AtomicInteger pending = new AtomicInteger();
+  private final AtomicLong scheduled = new AtomicLong();
+  private final AtomicLong fired = new AtomicLong();
+
+  TimeoutScheduler() {
+    executor = new ScheduledThreadPoolExecutor(1, task -> ThreadModel.getCurrent().newThread("ActionTimeout", true, task));
+    // cancelled timeouts are the norm, so don't keep them around until their deadline
+    executor.setRemoveOnCancelPolicy(true);
+  }
+
+  /** Runs the task on the timer thread once the delay has passed, unless cancelled before. */
+  public Handle schedule(long delay, TimeUnit unit, Runnable task) {
+    Handle handle = new Handle(task);
+    pending.incrementAndGet();
+    scheduled.incrementAndGet();
+    handle.future = executor.schedule(handle::fire, delay, unit);
+    return handle;
+  }
+
+  /** @return number of timeouts that have been scheduled but neither fired nor been cancelled */
+  public int getPending() {
+    return pending.get();
+  }
+
+  /** @return number of timeouts scheduled since startup */
+  public long getScheduled() {
+    return scheduled.get();
+  }
+
+  /** @return number of timeouts that were reached since startup */
+  public long getFired() {
+    return fired.get();
+  }
+
+  @Override
+  public String toString() {
+    return "TimeoutScheduler{" +
+        "pending=" + pending +
+        ", scheduled=" + scheduled +
+        ", fired=" + fired +
+        '}';
+  }
+
+  public final class Handle {
+    private final Runnable task;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile ScheduledFuture<?> future;
+
+    private Handle(Runnable task) {
+      this.task = task;
+    }
+
+    private void fire() {
+      if (done.compareAndSet(false, true)) {
+        pending.decrementAndGet();
+        fired.incrementAndGet();
+        try {
+          task.run();
+        } catch (RuntimeException e) {
+          // the executor would silently swallow it
+          logger.error("Timeout handler failed", e);
+        }
+      }
+    }
+
+    /** @return false if the timeout already fired or was cancelled before */
+    public boolean cancel() {
+      if (!done.compareAndSet(false, true))
+        return false;
+      pending.decrementAndGet();
+      ScheduledFuture<?> future = this.future;
+      if (future != null)
+        future.cancel(false);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package sc.networking
+
+import com.thoughtworks.xstream.XStream
+import sc.networking.binary.BinaryObjectInputStream
+import sc.networking.binary.BinaryObjectOutputStream
+import sc.networking.binary.CodecRegistry
+import sc.networking.binary.MAGIC
+import java.io.InputStream
+import java.io.ObjectInputStream
+import java.io.ObjectOutputStream
+import java.io.OutputStream
+
+/** Encoding of the packets on the wire.
+ * The receiving side detects the format from the first byte,
+ * a server answers in the format its client chose. */
+enum class WireFormat {
+    /** The XStream protocol, default for compatibility. */
+    XML {
+        override fun createInputStream(input: InputStream, xStream: XStream): ObjectInputStream =
+                xStream.createObjectInputStream(input)
+        override fun createOutputStream(output: OutputStream, xStream: XStream): ObjectOutputStream =
+                xStream.createObjectOutputStream(output, "protocol")
+    },
+    /** Compact encoding using the [sc.networking.binary.BinaryCodec]s,
+     * other packets are embedded as XML. */
+    BINARY {
+        override fun createInputStream(input: InputStream, xStream: XStream): ObjectInputStream =
+                BinaryObjectInputStream(input, CodecRegistry.default, xStream)
+        override fun createOutputStream(output: OutputStream, xStream: XStream): ObjectOutputStream =
+                BinaryObjectOutputStream(output, CodecRegistry.default, xStream)
+    };
+
+    abstract fun createInputStream(input: InputStream, xStream: XStream): ObjectInputStream
+
+    abstract fun createOutputStream(output: OutputStream, xStream: XStream): ObjectOutputStream
+
+    companion object {
+        /** Peeks at the first byte to determine the format of the stream.
+         * @param input must support [InputStream.mark] */
+        @JvmStatic
+        fun detect(input: InputStream): WireFormat {
+            input.mark(1)
+            val first = input.read()
+            input.reset()
+            return if(first == MAGIC[0].toInt()) BINARY else XML
+        }
+    }
+}
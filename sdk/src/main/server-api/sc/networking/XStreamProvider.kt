@@ -1,8 +1,12 @@
 package sc.networking
 
 import com.thoughtworks.xstream.XStream
+import com.thoughtworks.xstream.converters.DataHolder
+import com.thoughtworks.xstream.core.MapBackedDataHolder
 import com.thoughtworks.xstream.io.xml.KXml2Driver
+import com.thoughtworks.xstream.io.xml.PrettyPrintWriter
 import sc.protocol.LobbyProtocol
+import java.io.StringWriter
 import java.util.ServiceLoader
 
 interface XStreamProvider {
@@ -39,6 +43,32 @@ interface XStreamProvider {
                         provider.setup(xStream)
                     }
                 }
+        
+        /** A plugin XStream as returned by [loadPluginXStream], created on first use and shared by all callers,
+         * so that connections and replays don't repeat the class registration.
+         * XStream is thread-safe once configured, thus this instance must not be configured any further. */
+        @JvmStatic
+        val sharedPluginXStream: XStream by lazy { loadPluginXStream() }
+        
+        /** Key of the marshalling context set by [toUnredactedXML]. */
+        const val UNREDACTED = "sc.unredacted"
+        
+        /** Serializes [value] like [XStream.toXML], but converters checking [isUnredacted]
+         * include what they hide from the players, e.g. the board segments which were not revealed yet.
+         * Needed wherever a game is recreated from its state, reading the result requires nothing special. */
+        @JvmStatic
+        fun toUnredactedXML(xStream: XStream, value: Any): String {
+            val out = StringWriter()
+            val writer = PrettyPrintWriter(out)
+            xStream.marshal(value, writer, MapBackedDataHolder().apply { put(UNREDACTED, true) })
+            writer.flush()
+            return out.toString()
+        }
+        
+        /** @return whether the value is serialized by [toUnredactedXML] */
+        @JvmStatic
+        fun isUnredacted(context: DataHolder): Boolean =
+                context.get(UNREDACTED) == true
     }
     
     val classesToRegister: Collection<Class<*>>
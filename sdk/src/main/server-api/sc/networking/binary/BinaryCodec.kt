@@ -0,0 +1,54 @@
+package sc.networking.binary
+
+import java.util.ServiceLoader
+
+/** Encodes objects of exactly [type] compactly for the [sc.networking.WireFormat.BINARY] protocol.
+ * Nested objects without a codec of their own can be written via [BinaryOutput.writeObject]. */
+interface BinaryCodec<T: Any> {
+    /** Identifies the type within a stream, unique within 16..255.
+     * 16-31 are reserved for the sdk, plugins should use 32 and above. */
+    val tag: Int
+
+    val type: Class<T>
+
+    fun write(value: T, output: BinaryOutput)
+
+    fun read(input: BinaryInput): T
+}
+
+/** Supplies [BinaryCodec]s, found via [ServiceLoader] like [sc.networking.XStreamProvider]. */
+interface BinaryCodecProvider {
+    val codecs: Collection<BinaryCodec<*>>
+}
+
+/** Lookup of [BinaryCodec]s by tag and type, immutable after creation. */
+class CodecRegistry(codecs: Collection<BinaryCodec<*>>) {
+    private val byTag = arrayOfNulls<BinaryCodec<*>>(256)
+    private val byType = HashMap<Class<*>, BinaryCodec<*>>()
+
+    init {
+        codecs.forEach { codec ->
+            require(codec.tag in FIRST_TAG..255) { "Tag of $codec must be within $FIRST_TAG..255" }
+            byTag[codec.tag]?.let { throw IllegalArgumentException("$codec uses tag ${codec.tag} of $it") }
+            byTag[codec.tag] = codec
+            byType[codec.type] = codec
+        }
+    }
+
+    fun forTag(tag: Int): BinaryCodec<*>? = byTag[tag]
+
+    @Suppress("UNCHECKED_CAST")
+    fun <T: Any> forType(type: Class<T>): BinaryCodec<T>? = byType[type] as BinaryCodec<T>?
+
+    companion object {
+        /** Tags below are used for framing by [BinaryOutput]. */
+        const val FIRST_TAG = 16
+
+        /** The sdk codecs along with those of all [BinaryCodecProvider]s on the classpath. */
+        @JvmStatic
+        val default: CodecRegistry by lazy {
+            CodecRegistry(ProtocolCodecs.codecs +
+                          ServiceLoader.load(BinaryCodecProvider::class.java).flatMap { it.codecs })
+        }
+    }
+}
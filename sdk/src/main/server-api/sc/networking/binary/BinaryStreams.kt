@@ -0,0 +1,110 @@
+package sc.networking.binary
+
+import com.thoughtworks.xstream.XStream
+import java.io.*
+
+/** Writes objects as a tag followed by their [BinaryCodec] encoding,
+ * objects without codec are embedded as XML. */
+class BinaryOutput(
+        output: OutputStream,
+        private val codecs: CodecRegistry,
+        private val xStream: XStream,
+): DataOutputStream(output) {
+
+    fun writeObject(value: Any?) {
+        if(value == null) {
+            writeByte(NULL)
+            return
+        }
+        val codec = codecs.forType(value.javaClass)
+        if(codec != null) {
+            writeByte(codec.tag)
+            codec.write(value, this)
+        } else {
+            writeByte(XML)
+            val xml = xStream.toXML(value).toByteArray(Charsets.UTF_8)
+            writeVarInt(xml.size)
+            write(xml)
+        }
+    }
+
+    /** Writes a signed integer in as few bytes as possible, small magnitudes take a single byte. */
+    fun writeVarInt(value: Int) {
+        var zigzag = (value shl 1) xor (value shr 31)
+        while(zigzag and 0x7F.inv() != 0) {
+            writeByte(zigzag and 0x7F or 0x80)
+            zigzag = zigzag ushr 7
+        }
+        writeByte(zigzag)
+    }
+
+    fun writeEnum(value: Enum<*>) = writeByte(value.ordinal)
+}
+
+/** Counterpart of [BinaryOutput]. */
+class BinaryInput(
+        input: InputStream,
+        private val codecs: CodecRegistry,
+        private val xStream: XStream,
+): DataInputStream(input) {
+
+    fun readObject(): Any? =
+            when(val tag = readUnsignedByte()) {
+                NULL -> null
+                XML -> String(ByteArray(readVarInt()).also { readFully(it) }, Charsets.UTF_8).let { xStream.fromXML(it) }
+                else -> (codecs.forTag(tag) ?: throw StreamCorruptedException("Unknown binary tag $tag")).read(this)
+            }
+
+    fun readVarInt(): Int {
+        var zigzag = 0
+        var shift = 0
+        do {
+            val byte = readUnsignedByte()
+            zigzag = zigzag or (byte and 0x7F shl shift)
+            shift += 7
+        } while(byte and 0x80 != 0)
+        return (zigzag ushr 1) xor -(zigzag and 1)
+    }
+
+    fun <E: Enum<E>> readEnum(values: Array<E>): E =
+            values.getOrNull(readUnsignedByte()) ?: throw StreamCorruptedException("Invalid ${values.first().javaClass.simpleName}")
+}
+
+private const val NULL = 0
+private const val XML = 1
+
+/** Stream header announcing [sc.networking.WireFormat.BINARY], chosen not to be valid XML. */
+internal val MAGIC = byteArrayOf(0, 'S'.code.toByte(), 'C'.code.toByte(), 1)
+
+/** [ObjectOutputStream] writing the binary format, to be used in place of the XStream one. */
+class BinaryObjectOutputStream(output: OutputStream, codecs: CodecRegistry, xStream: XStream): ObjectOutputStream() {
+    private val data = BinaryOutput(BufferedOutputStream(output), codecs, xStream)
+
+    init {
+        data.write(MAGIC)
+    }
+
+    override fun writeObjectOverride(obj: Any?) = data.writeObject(obj)
+
+    override fun flush() = data.flush()
+
+    override fun close() = data.close()
+}
+
+/** [ObjectInputStream] reading the binary format after its header. */
+class BinaryObjectInputStream(input: InputStream, codecs: CodecRegistry, xStream: XStream): ObjectInputStream() {
+    private val data = BinaryInput(input, codecs, xStream)
+
+    init {
+        val header = ByteArray(MAGIC.size)
+        data.readFully(header)
+        if(!header.contentEquals(MAGIC))
+            throw StreamCorruptedException("Invalid binary stream header")
+    }
+
+    override fun readObjectOverride(): Any? = data.readObject()
+
+    override fun available() = data.available()
+
+    override fun close() = data.close()
+}
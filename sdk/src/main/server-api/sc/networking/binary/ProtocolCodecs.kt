@@ -0,0 +1,38 @@
+package sc.networking.binary
+
+import sc.api.plugins.IGameState
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.RoomMessage
+import sc.protocol.room.RoomPacket
+
+/** Codecs for the messages sent every turn, the state itself is left to the plugins. */
+object ProtocolCodecs: BinaryCodecProvider {
+    override val codecs: Collection<BinaryCodec<*>> = listOf(
+            object: BinaryCodec<RoomPacket> {
+                override val tag = 16
+                override val type = RoomPacket::class.java
+                override fun write(value: RoomPacket, output: BinaryOutput) {
+                    output.writeUTF(value.roomId)
+                    output.writeObject(value.data)
+                }
+                override fun read(input: BinaryInput) =
+                        RoomPacket(input.readUTF(), input.readObject() as RoomMessage)
+            },
+            object: BinaryCodec<MementoMessage> {
+                override val tag = 17
+                override val type = MementoMessage::class.java
+                // like in XML, the perspective is not transmitted
+                override fun write(value: MementoMessage, output: BinaryOutput) =
+                        output.writeObject(value.state)
+                override fun read(input: BinaryInput) =
+                        MementoMessage(input.readObject() as IGameState, null)
+            },
+            object: BinaryCodec<MoveRequest> {
+                override val tag = 18
+                override val type = MoveRequest::class.java
+                override fun write(value: MoveRequest, output: BinaryOutput) {}
+                override fun read(input: BinaryInput) = MoveRequest()
+            },
+    )
+}
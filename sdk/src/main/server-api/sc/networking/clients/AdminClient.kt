@@ -2,6 +2,7 @@ package sc.networking.clients
 
 import sc.protocol.requests.ObservationRequest
 import sc.protocol.requests.PrepareGameRequest
+import sc.protocol.requests.PrepareGamesRequest
 import sc.protocol.room.ObservableRoomMessage
 
 class AdminClient(private val client: LobbyClient) {
@@ -12,6 +13,11 @@ class AdminClient(private val client: LobbyClient) {
         client.send(request)
     }
     
+    /** Prepares all [requests] with a single packet, every prepared game is reported separately. */
+    fun prepareGames(requests: List<PrepareGameRequest>) {
+        client.send(PrepareGamesRequest(requests))
+    }
+    
     /** Returns an [IGameController] to control the given room. */
     fun control(roomId: String): IGameController =
             GameController(roomId, client)
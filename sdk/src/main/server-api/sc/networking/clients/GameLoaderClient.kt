@@ -2,45 +2,83 @@ package sc.networking.clients
 
 import org.slf4j.LoggerFactory
 import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.framework.CompactReplay
+import sc.framework.ReplayIndex
+import sc.framework.ReplayReader
 import sc.networking.FileSystemInterface
 import sc.protocol.ProtocolPacket
 import sc.protocol.room.MementoMessage
 import sc.protocol.room.RoomPacket
+import sc.protocol.room.StateChecksum
 import sc.shared.GameResult
 import java.io.File
 import java.io.IOException
 import java.io.InputStream
+import java.util.concurrent.CountDownLatch
 import java.util.zip.GZIPInputStream
 
 /**
  * This client serves the purpose to load game information from any XML file
  * (for example a replay).
+ * To process many replays, [ReplayReader] reads them without a receive thread.
  */
 class GameLoaderClient(inputStream: InputStream): XStreamClient(FileSystemInterface(inputStream)) {
     constructor(file: File): this(if(file.extension == "gz") GZIPInputStream(file.inputStream()) else file.inputStream())
     
     private val history: MutableList<IGameState> = ArrayList(50)
+    private val decoder = CompactReplay.Decoder(xStream)
     var result: GameResult? = null
         private set
+    /** Why the replay couldn't be read completely, rethrown by [getHistory]. */
+    @Volatile
+    private var failure: IOException? = null
     
     override fun onObject(message: ProtocolPacket) {
         logger.trace("Adding packet to replay: {}", message)
         if (message !is RoomPacket)
             throw IOException("Can't extract replay from $message")
         when (val msg = message.data) {
-            is MementoMessage -> history.add(msg.state)
+            is MementoMessage, is IMove, is StateChecksum -> {
+                val state = try {
+                    decoder.decode(msg)
+                } catch(e: IOException) {
+                    // the receive loop only logs this as a lost connection
+                    failure = e
+                    throw e
+                }
+                state?.let { history.add(it) }
+            }
             is GameResult -> result = msg
             else -> logger.warn("Unknown message in replay: {}", msg)
         }
     }
     
+    /** Released once nothing more is received, see [close]. */
+    private val finished = CountDownLatch(1)
+    
+    override fun onDisconnected(cause: DisconnectCause) {
+        super.onDisconnected(cause)
+        finished.countDown()
+    }
+    
+    /** Also releases [getHistory] where the receive thread ends without [onDisconnected],
+     * e.g. when closing interrupts it or a disconnect listener fails. */
+    override fun close() {
+        super.close()
+        finished.countDown()
+    }
+    
+    /** @throws IOException if the states of a compact replay can't be reconstructed */
+    @Throws(IOException::class)
     fun getHistory(): List<IGameState> {
         start()
-        while (!isClosed)
-            Thread.sleep(100)
+        finished.await()
+        failure?.let { throw IOException("Failed to load replay: ${it.message}", it) }
         return history
     }
     
+    @Throws(IOException::class)
     fun getTurn(turn: Int) =
         getHistory().first {
             it.turn >= turn
@@ -51,5 +89,12 @@ class GameLoaderClient(inputStream: InputStream): XStreamClient(FileSystemInterf
     
     companion object {
         private val logger = LoggerFactory.getLogger(this::class.java)
+        
+        /** Loads the first state at or after [turn] from the replay in [file],
+         * decoding only that state if the replay has a [ReplayIndex]. */
+        @JvmStatic
+        fun loadTurn(file: File, turn: Int): IGameState =
+                ReplayIndex.open(file)?.getTurn(turn)
+                ?: ReplayReader(file).use { reader -> reader.states().first { it.turn >= turn } }
     }
 }
\ No newline at end of file
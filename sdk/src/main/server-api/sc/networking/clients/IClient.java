@@ -8,4 +8,10 @@ import java.io.Closeable;
 public interface IClient extends Closeable {
   /** Send a package. */
   void send(ProtocolPacket packet);
+
+  /** Send a package which may be dropped if the client can't keep up,
+   * e.g. an intermediate state for an observer. */
+  default void sendDroppable(ProtocolPacket packet) {
+    send(packet);
+  }
 }
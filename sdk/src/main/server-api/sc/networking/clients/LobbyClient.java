@@ -4,6 +4,7 @@ import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sc.api.plugins.IGameState;
+import sc.networking.WireFormat;
 import sc.player.IGameHandler;
 import sc.player.IPlayerClient;
 import sc.player.PlayerClient;
@@ -46,6 +47,11 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
     super(createTcpNetwork(host, port));
   }
 
+  /** @param wireFormat format to communicate in, the server answers accordingly */
+  public LobbyClient(String host, int port, WireFormat wireFormat) throws IOException {
+    super(createTcpNetwork(host, port), DEFAULT_QUEUE_CAPACITY, wireFormat);
+  }
+
   /** Request authentication on server with a listener.
    * @return an AdminClient to send authorised requests */
   public AdminClient authenticate(String password, Consumer<ResponsePacket> consumer) {
@@ -118,6 +124,8 @@ public final class LobbyClient extends XStreamClient implements IPollsHistory {
         stop();
     } else if (message instanceof GamePreparedResponse) {
       onGamePrepared((GamePreparedResponse) message);
+    } else if (message instanceof GamesPreparedResponse) {
+      ((GamesPreparedResponse) message).getGames().forEach(this::onGamePrepared);
     } else if (message instanceof JoinedRoomResponse) {
       onGameJoined(((JoinedRoomResponse) message).getRoomId());
     } else if (message instanceof RoomWasJoinedEvent) {
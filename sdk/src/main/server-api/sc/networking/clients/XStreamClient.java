@@ -5,20 +5,32 @@ import com.thoughtworks.xstream.XStreamException;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.ThreadModel;
 import sc.networking.INetworkInterface;
 import sc.networking.TcpNetwork;
 import sc.networking.UnprocessedPacketException;
+import sc.networking.WireFormat;
 import sc.networking.XStreamProvider;
 import sc.protocol.CloseConnection;
 import sc.protocol.ProtocolPacket;
+import sc.protocol.room.RoomPacket;
 
+import java.io.BufferedInputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public abstract class XStreamClient implements IClient {
   private static Logger logger = LoggerFactory.getLogger(XStreamClient.class);
@@ -28,13 +40,29 @@ public abstract class XStreamClient implements IClient {
     return new TcpNetwork(new Socket(host, port));
   }
 
+  /** Default capacity of the outbound queue. */
+  public static final int DEFAULT_QUEUE_CAPACITY = 256;
+  /** How long {@link #close()} waits for queued packets to be written. */
+  private static final long DRAIN_TIMEOUT_MILLIS = 1000;
+
   private final INetworkInterface networkInterface;
-  private final ObjectOutputStream out;
+  /** Created on first use by the send thread, see {@link #getWireFormat()}. */
+  private volatile ObjectOutputStream out;
+  /** Format to send in, null to answer in the format of the other side. */
+  private final WireFormat wireFormat;
+  private volatile WireFormat incomingFormat;
   private final Thread receiveThread;
-  protected final XStream xStream = XStreamProvider.loadPluginXStream();
+  private final Thread sendThread;
+  private final BlockingQueue<Outbound> outbound;
+  private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+  private final AtomicInteger maxQueueDepth = new AtomicInteger();
+  private final AtomicLong droppedPackets = new AtomicLong();
+  /** Set once a disconnect as {@link DisconnectCause#SLOW_CONSUMER} is under way. */
+  private final AtomicBoolean slowConsumer = new AtomicBoolean();
+  protected final XStream xStream;
 
   private DisconnectCause disconnectCause = DisconnectCause.NOT_DISCONNECTED;
-  private boolean closed = false;
+  private volatile boolean closed = false;
   private boolean ready = false;
   private final Object readyLock = new Object();
 
@@ -50,9 +78,45 @@ public abstract class XStreamClient implements IClient {
     LOST_CONNECTION,
     TIMEOUT,
     NOT_CONNECTED,
+    /** the outbound queue overflowed and the {@link OverflowPolicy} could not make room */
+    SLOW_CONSUMER,
     UNKNOWN
   }
 
+  /** Determines what happens when a packet is sent while the outbound queue is full. */
+  public enum OverflowPolicy {
+    /** wait until the queue has room again */
+    BLOCK,
+    /** discard queued {@link #sendDroppable(ProtocolPacket) droppable} packets
+     * superseded by the new one; if that frees no room, discard the oldest queued droppable packet,
+     * else the new packet if it is droppable, otherwise disconnect the client.
+     * Never waits, so a slow observer can't hold up the rooms of its worker. */
+    DROP_MEMENTOS,
+    /** disconnect the client, as it can't keep up */
+    DISCONNECT
+  }
+
+  /** A queued packet, {@link #END} marks the end of the queue. */
+  private static final class Outbound {
+    static final Outbound END = new Outbound(null, false);
+
+    final Object packet;
+    final boolean droppable;
+
+    Outbound(Object packet, boolean droppable) {
+      this.packet = packet;
+      this.droppable = droppable;
+    }
+
+    /** Whether this packet is outdated once the given packet is sent,
+     * i.e. both are droppable and belong to the same room. */
+    boolean isSupersededBy(Outbound other) {
+      return droppable && other.droppable &&
+             packet instanceof RoomPacket && other.packet instanceof RoomPacket &&
+             ((RoomPacket) packet).getRoomId().equals(((RoomPacket) other.packet).getRoomId());
+    }
+  }
+
   public boolean isReady() {
     return ready;
   }
@@ -68,12 +132,38 @@ public abstract class XStreamClient implements IClient {
   }
 
   public XStreamClient(final INetworkInterface networkInterface) throws IOException {
+    this(networkInterface, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /** @param queueCapacity maximum number of packets waiting to be written */
+  public XStreamClient(final INetworkInterface networkInterface, int queueCapacity) throws IOException {
+    this(networkInterface, queueCapacity, WireFormat.XML);
+  }
+
+  /**
+   * @param queueCapacity maximum number of packets waiting to be written
+   * @param wireFormat format to send packets in,
+   *                   null to answer in the format the other side sends in
+   */
+  public XStreamClient(final INetworkInterface networkInterface, int queueCapacity, WireFormat wireFormat) throws IOException {
+    this(networkInterface, queueCapacity, wireFormat, XStreamProvider.getSharedPluginXStream());
+  }
+
+  /**
+   * @param queueCapacity maximum number of packets waiting to be written
+   * @param wireFormat format to send packets in,
+   *                   null to answer in the format the other side sends in
+   * @param xStream configured instance to (de)serialize packets with, which is not modified
+   */
+  public XStreamClient(final INetworkInterface networkInterface, int queueCapacity, WireFormat wireFormat, XStream xStream) throws IOException {
     if (networkInterface == null)
       throw new IllegalArgumentException("networkInterface must not be null.");
 
     this.networkInterface = networkInterface;
-    this.out = xStream.createObjectOutputStream(networkInterface.getOutputStream(), "protocol");
-    this.receiveThread = new Thread(new Runnable() {
+    this.xStream = xStream;
+    this.outbound = new ArrayBlockingQueue<>(queueCapacity);
+    this.wireFormat = wireFormat;
+    this.receiveThread = ThreadModel.getCurrent().newThread("XStream-Receive", false, new Runnable() {
       @Override
       public void run() {
         try {
@@ -86,13 +176,21 @@ public abstract class XStreamClient implements IClient {
     });
     this.receiveThread.setName(String.format("XStream-Receive id:%d of %s", receiveThread.getId(), shortString()));
     this.receiveThread.start();
+    this.sendThread = ThreadModel.getCurrent().newThread("XStream-Send", false, this::sendThread);
+    this.sendThread.setName(String.format("XStream-Send id:%d of %s", sendThread.getId(), shortString()));
+    this.sendThread.start();
   }
 
   protected abstract void onObject(@NotNull ProtocolPacket message) throws UnprocessedPacketException;
 
+  /** Like {@link #onObject(ProtocolPacket)}, with the {@link System#nanoTime()} at which the packet was read. */
+  protected void onObject(@NotNull ProtocolPacket message, long receivedAt) throws UnprocessedPacketException {
+    onObject(message);
+  }
+
   /** Used by the receiving thread. All exceptions should be handled. */
   public void receiveThread() {
-    try (ObjectInputStream in = xStream.createObjectInputStream(networkInterface.getInputStream())) {
+    try (ObjectInputStream in = createInputStream()) {
       synchronized(readyLock) {
         while (!isReady()) {
           readyLock.wait();
@@ -101,6 +199,7 @@ public abstract class XStreamClient implements IClient {
 
       while (!Thread.interrupted()) {
         Object object = in.readObject();
+        long receivedAt = System.nanoTime();
         if (object instanceof ProtocolPacket) {
           ProtocolPacket response = (ProtocolPacket) object;
 
@@ -112,7 +211,7 @@ public abstract class XStreamClient implements IClient {
             handleDisconnect(DisconnectCause.RECEIVED_DISCONNECT);
             break;
           } else {
-            onObject(response);
+            onObject(response, receivedAt);
           }
         } else {
           throw new ClassNotFoundException("Received object of unknown class " + object.getClass().getName());
@@ -154,6 +253,30 @@ public abstract class XStreamClient implements IClient {
     }
   }
 
+  /** Detects the format the other side sends in and opens a matching stream. */
+  private ObjectInputStream createInputStream() throws IOException {
+    InputStream input = new BufferedInputStream(networkInterface.getInputStream());
+    incomingFormat = WireFormat.detect(input);
+    logger.debug("Receiving {} via {}", incomingFormat, networkInterface);
+    return incomingFormat.createInputStream(input, xStream);
+  }
+
+  /** The format packets are sent in.
+   * Unless fixed on construction, this is the format received from the other side,
+   * falling back to XML if nothing was received yet. */
+  public WireFormat getWireFormat() {
+    if (wireFormat != null)
+      return wireFormat;
+    WireFormat incoming = incomingFormat;
+    return incoming != null ? incoming : WireFormat.XML;
+  }
+
+  private ObjectOutputStream getOut() throws IOException {
+    if (out == null)
+      out = getWireFormat().createOutputStream(networkInterface.getOutputStream(), xStream);
+    return out;
+  }
+
   public void sendCustomData(String data) throws IOException {
     logger.debug("Sending custom data: {}", data);
     sendCustomData(data.getBytes(StandardCharsets.UTF_8));
@@ -169,7 +292,19 @@ public abstract class XStreamClient implements IClient {
     sendObject(packet);
   }
 
-  protected synchronized void sendObject(Object packet) {
+  /** Sends a packet which may be dropped under {@link OverflowPolicy#DROP_MEMENTOS}
+   * when a newer droppable packet for the same room is queued, e.g. an intermediate state. */
+  @Override
+  public void sendDroppable(ProtocolPacket packet) {
+    enqueue(packet, true);
+  }
+
+  protected void sendObject(Object packet) {
+    enqueue(packet, false);
+  }
+
+  /** Queues the packet for the send thread, applying the {@link OverflowPolicy} if the queue is full. */
+  private void enqueue(Object packet, boolean droppable) {
     if (!isReady())
       throw new IllegalStateException(
           String.format("Trying to write packet %s on non-started client %s", packet, this));
@@ -179,19 +314,147 @@ public abstract class XStreamClient implements IClient {
           packet.getClass().getSimpleName());
       return;
     }
+    if (slowConsumer.get())
+      return;
 
     logger.debug("Sending {} via {} from {}", packet, networkInterface, this);
     if (logger.isTraceEnabled())
       logger.trace("Dumping {}:\n{}", packet, xStream.toXML(packet));
 
+    Outbound entry = new Outbound(packet, droppable);
+    if (!outbound.offer(entry)) {
+      switch (overflowPolicy) {
+        case DISCONNECT:
+          disconnectSlowConsumer();
+          return;
+        case DROP_MEMENTOS:
+          int dropped = 0;
+          for (Iterator<Outbound> it = outbound.iterator(); it.hasNext(); ) {
+            if (it.next().isSupersededBy(entry)) {
+              it.remove();
+              dropped++;
+            }
+          }
+          if (dropped > 0) {
+            droppedPackets.addAndGet(dropped);
+            logger.debug("Dropped {} outdated packets for {}", dropped, this);
+          }
+          if (outbound.offer(entry))
+            break;
+          // waiting would stall the room worker sending this, and with it every room on that worker,
+          // so rather an old state is lost than the latest one
+          for (Iterator<Outbound> it = outbound.iterator(); it.hasNext(); ) {
+            if (it.next().droppable) {
+              it.remove();
+              droppedPackets.incrementAndGet();
+              logger.debug("Dropped the oldest droppable packet for {}, its queue is full", this);
+              break;
+            }
+          }
+          if (outbound.offer(entry))
+            break;
+          if (droppable) {
+            droppedPackets.incrementAndGet();
+            logger.debug("Dropped new packet for {}, its queue is full", this);
+            return;
+          }
+          disconnectSlowConsumer();
+          return;
+        case BLOCK:
+          try {
+            while (!outbound.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+              if (isClosed()) {
+                logger.warn("{} was closed while waiting to send {}", this, packet);
+                return;
+              }
+            }
+          } catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting to send {}", packet);
+            Thread.currentThread().interrupt();
+            return;
+          }
+      }
+    }
+    maxQueueDepth.accumulateAndGet(outbound.size(), Math::max);
+  }
+
+  /** Disconnects the client on a new thread, as the sender may be a room worker in the middle of a broadcast,
+   * which must neither wait for the connection to close nor run the disconnect listeners.
+   * Packets sent meanwhile are discarded. */
+  private void disconnectSlowConsumer() {
+    if (!slowConsumer.compareAndSet(false, true))
+      return;
+    logger.warn("{} can't keep up with {} queued packets, disconnecting", this, outbound.size());
+    ThreadModel.getCurrent().newThread("XStream-Disconnect", true,
+        () -> handleDisconnect(DisconnectCause.SLOW_CONSUMER)).start();
+  }
+
+  /** Writes queued packets, flushing whenever the queue runs empty. */
+  private void sendThread() {
     try {
-      this.out.writeObject(packet);
-      this.out.flush();
+      while (true) {
+        Outbound entry = outbound.take();
+        if (entry == Outbound.END)
+          break;
+        getOut().writeObject(entry.packet);
+        if (outbound.isEmpty())
+          out.flush();
+      }
+      if (out != null)
+        out.flush();
+    } catch (InterruptedException e) {
+      logger.debug("{} interrupted with {} packets left", sendThread.getName(), outbound.size());
     } catch (XStreamException e) {
-      handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
+      if (!isClosed())
+        handleDisconnect(DisconnectCause.PROTOCOL_ERROR, e);
     } catch (IOException e) {
-      handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
+      if (!isClosed())
+        handleDisconnect(DisconnectCause.LOST_CONNECTION, e);
+    }
+    logger.debug("Terminated {}", sendThread.getName());
+  }
+
+  /** Waits up to {@link #DRAIN_TIMEOUT_MILLIS} for the send thread to write all queued packets. */
+  private void drainOutbound() {
+    if (Thread.currentThread() == sendThread)
+      return;
+    if (disconnectCause == DisconnectCause.SLOW_CONSUMER) {
+      sendThread.interrupt();
+      return;
+    }
+    try {
+      if (outbound.offer(Outbound.END, DRAIN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS))
+        sendThread.join(DRAIN_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
+    if (sendThread.isAlive()) {
+      logger.warn("Could not send {} queued packets of {}", outbound.size(), this);
+      sendThread.interrupt();
+    }
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  /** Number of packets currently waiting to be written. */
+  public int getQueueDepth() {
+    return outbound.size();
+  }
+
+  /** Highest number of packets that were waiting to be written at once. */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth.get();
+  }
+
+  /** Number of packets dropped under {@link OverflowPolicy#DROP_MEMENTOS}. */
+  public long getDroppedPackets() {
+    return droppedPackets.get();
   }
 
   protected final void handleDisconnect(DisconnectCause cause) {
@@ -252,6 +515,9 @@ public abstract class XStreamClient implements IClient {
       this.closed = true;
 
       stopReceiver();
+      drainOutbound();
+      if (maxQueueDepth.get() > 0)
+        logger.debug("{} closed, max queue depth {}, dropped {} packets", this, maxQueueDepth.get(), droppedPackets.get());
 
       try {
         if (this.out != null)
@@ -273,10 +539,6 @@ public abstract class XStreamClient implements IClient {
     }
   }
 
-  public XStream getXStream() {
-    return this.xStream;
-  }
-
   public boolean isClosed() {
     return this.closed;
   }
@@ -21,6 +21,7 @@ object LobbyProtocol {
                 ObservationRequest::class.java,
                 PauseGameRequest::class.java,
                 PrepareGameRequest::class.java,
+                PrepareGamesRequest::class.java,
                 StepRequest::class.java,
         ))
     
@@ -28,6 +29,7 @@ object LobbyProtocol {
         registerAdditionalMessages(xStream, listOf(
                 ErrorPacket::class.java,
                 GamePreparedResponse::class.java,
+                GamesPreparedResponse::class.java,
                 JoinedRoomResponse::class.java,
                 ObservationResponse::class.java,
                 RoomWasJoinedEvent::class.java,
@@ -41,6 +43,7 @@ object LobbyProtocol {
                 GamePaused::class.java,
                 MementoMessage::class.java,
                 MoveRequest::class.java,
+                StateChecksum::class.java,
                 WelcomeMessage::class.java,
         ))
         
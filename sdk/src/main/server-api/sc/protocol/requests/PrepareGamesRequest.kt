@@ -0,0 +1,12 @@
+package sc.protocol.requests
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+import com.thoughtworks.xstream.annotations.XStreamImplicit
+
+/** Prepare several games at once, e.g. a whole round of a tournament.
+ * Answered by a single [sc.protocol.responses.GamesPreparedResponse] in the same order. */
+@XStreamAlias("prepareGames")
+data class PrepareGamesRequest(
+    @XStreamImplicit(itemFieldName = "prepare")
+    val games: List<PrepareGameRequest>
+): AdminLobbyRequest
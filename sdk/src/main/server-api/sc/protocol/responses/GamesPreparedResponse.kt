@@ -0,0 +1,13 @@
+package sc.protocol.responses
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+import com.thoughtworks.xstream.annotations.XStreamImplicit
+import sc.protocol.ResponsePacket
+
+/** Response to [sc.protocol.requests.PrepareGamesRequest].
+ * @param games the prepared rooms in the order of the requested games */
+@XStreamAlias(value = "preparedGames")
+data class GamesPreparedResponse(
+        @XStreamImplicit(itemFieldName = "prepared")
+        val games: List<GamePreparedResponse>
+): ResponsePacket
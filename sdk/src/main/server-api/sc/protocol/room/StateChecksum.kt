@@ -0,0 +1,12 @@
+package sc.protocol.room
+
+import com.thoughtworks.xstream.annotations.XStreamAlias
+import com.thoughtworks.xstream.annotations.XStreamAsAttribute
+
+/** CRC32 of the serialized state at [turn],
+ * written to compact replays to verify the states reconstructed from the moves. */
+@XStreamAlias(value = "checksum")
+data class StateChecksum(
+        @XStreamAsAttribute val turn: Int,
+        @XStreamAsAttribute val crc: Long,
+): RoomMessage
@@ -0,0 +1,66 @@
+package sc.framework
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.api.plugins.ITeam
+import sc.api.plugins.Team
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.RoomPacket
+import sc.protocol.room.WelcomeMessage
+import java.io.ByteArrayOutputStream
+import java.io.IOException
+import java.util.concurrent.Executor
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+private data class TestState(override val turn: Int = 0): IGameState {
+    override val round get() = turn / 2
+    override val currentTeam get() = Team.ONE
+    override val isOver get() = false
+    override fun getPointsForTeam(team: ITeam) = IntArray(0)
+    override fun moveIterator() = emptyList<IMove>().iterator()
+    override fun clone() = copy()
+}
+
+class ReplayWriterTest: FunSpec({
+    val xStream = XStreamProvider.sharedPluginXStream
+    test("writes messages in order") {
+        val target = ByteArrayOutputStream()
+        val replay = ReplayWriter({ target })
+        val messages = Team.values().map { RoomPacket("room", WelcomeMessage(it)) }
+        messages.forEach { replay.addMessage(it) }
+        replay.close().get(5, TimeUnit.SECONDS)
+        target.toString("UTF-8") shouldBe messages.joinToString("\n", "<protocol>\n", "\n</protocol>") { xStream.toXML(it) }
+    }
+    test("only opens the target once needed") {
+        var opened = false
+        val replay = ReplayWriter({ opened = true; ByteArrayOutputStream() }, io = Runnable::run)
+        opened shouldBe false
+        replay.addMessage(WelcomeMessage(Team.ONE))
+        opened shouldBe true
+    }
+    test("drops states while too many messages wait to be written") {
+        val tasks = LinkedBlockingQueue<Runnable>()
+        val replay = ReplayWriter({ ByteArrayOutputStream() }, io = Executor { tasks.add(it) })
+        repeat(ReplayWriter.MAX_PENDING) { replay.addMessage(RoomPacket("room", WelcomeMessage(Team.ONE))) }
+        replay.addMessage(RoomPacket("room", MementoMessage(TestState(), null)))
+        replay.droppedStates shouldBe 1
+        tasks.size shouldBe ReplayWriter.MAX_PENDING
+        // other messages are kept
+        replay.addMessage(RoomPacket("room", WelcomeMessage(Team.TWO)))
+        tasks.size shouldBe ReplayWriter.MAX_PENDING + 1
+        tasks.poll().run()
+        tasks.poll().run()
+        replay.addMessage(RoomPacket("room", MementoMessage(TestState(), null)))
+        replay.droppedStates shouldBe 1
+        tasks.size shouldBe ReplayWriter.MAX_PENDING
+    }
+    test("completes even if the target can't be opened") {
+        val replay = ReplayWriter({ throw IOException("no space left") })
+        replay.addMessage(WelcomeMessage(Team.ONE))
+        replay.close().get(5, TimeUnit.SECONDS)
+    }
+})
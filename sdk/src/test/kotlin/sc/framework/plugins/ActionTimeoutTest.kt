@@ -0,0 +1,67 @@
+package sc.framework.plugins
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.longs.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class ActionTimeoutTest: FunSpec({
+    test("scheduler counts pending timeouts") {
+        val scheduler = TimeoutScheduler()
+        val fired = CountDownLatch(1)
+        val cancelled = List(1000) { scheduler.schedule(1, TimeUnit.MINUTES) { throw AssertionError("fired") } }
+        scheduler.schedule(10, TimeUnit.MILLISECONDS) { fired.countDown() }
+        scheduler.pending shouldBe 1001
+        cancelled.forEach { it.cancel() shouldBe true }
+        cancelled.first().cancel() shouldBe false
+        fired.await(5, TimeUnit.SECONDS) shouldBe true
+        scheduler.pending shouldBe 0
+        scheduler.scheduled shouldBe 1001
+        scheduler.fired shouldBe 1
+    }
+    test("hard timeout notifies without stopping") {
+        val timeout = ActionTimeout(true, 50, 20)
+        val reached = CountDownLatch(1)
+        timeout.start { reached.countDown() }
+        reached.await(5, TimeUnit.SECONDS) shouldBe true
+        timeout.stop()
+        timeout.didTimeout() shouldBe true
+        timeout.timeDiff shouldBeGreaterThanOrEqual 50
+    }
+    test("an action received before the hard timeout wins over a later stop") {
+        val timeout = ActionTimeout(true, 50, 20)
+        val reached = CountDownLatch(1)
+        timeout.start { reached.countDown() }
+        val receivedAt = System.nanoTime()
+        reached.await(5, TimeUnit.SECONDS) shouldBe true
+        timeout.stop()
+        timeout.stop(receivedAt)
+        timeout.didTimeout() shouldBe false
+    }
+    test("stopping in time cancels the hard timeout") {
+        val timeout = ActionTimeout(true, 5000, 1000)
+        timeout.start { throw AssertionError("timed out") }
+        timeout.stop()
+        timeout.didTimeout() shouldBe false
+    }
+    test("queuing after the arrival of the action is not counted") {
+        val timeout = ActionTimeout(true, 5000, 20)
+        timeout.start { }
+        val receivedAt = System.nanoTime()
+        Thread.sleep(50)
+        timeout.stop(receivedAt)
+        timeout.didTimeout() shouldBe false
+    }
+    test("only pauses overlapping the interval are counted") {
+        val tracker = GcPauseTracker(2)
+        tracker.record(100, 200)
+        tracker.record(300, 400)
+        tracker.pausedNanosBetween(150, 350) shouldBe 100
+        tracker.pausedNanosBetween(0, 1000) shouldBe 200
+        tracker.pausedNanosBetween(200, 300) shouldBe 0
+        // the oldest pause is overwritten
+        tracker.record(500, 600)
+        tracker.pausedNanosBetween(0, 1000) shouldBe 200
+    }
+})
@@ -0,0 +1,28 @@
+package sc.networking
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.inspectors.forAll
+import io.kotest.matchers.*
+import io.kotest.matchers.types.*
+import sc.protocol.requests.PrepareGameRequest
+import sc.shared.SlotDescriptor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class XStreamProviderTest: FunSpec({
+    test("shared XStream is created once") {
+        XStreamProvider.sharedPluginXStream shouldBeSameInstanceAs XStreamProvider.sharedPluginXStream
+    }
+    test("shared XStream can be used concurrently") {
+        val xStream = XStreamProvider.sharedPluginXStream
+        val request = PrepareGameRequest("testgame", SlotDescriptor("p1"), SlotDescriptor("p2"))
+        val expected = XStreamProvider.loadPluginXStream().toXML(request)
+        val executor = Executors.newFixedThreadPool(8)
+        val results = List(200) {
+            executor.submit<String> { xStream.toXML(xStream.fromXML(expected)) }
+        }
+        executor.shutdown()
+        executor.awaitTermination(10, TimeUnit.SECONDS) shouldBe true
+        results.forAll { it.get() shouldBe expected }
+    }
+})
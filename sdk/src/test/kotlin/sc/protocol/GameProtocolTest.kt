@@ -7,6 +7,9 @@ import sc.helpers.shouldSerializeTo
 import sc.helpers.testXStream
 import sc.protocol.requests.JoinGameRequest
 import sc.protocol.requests.PrepareGameRequest
+import sc.protocol.requests.PrepareGamesRequest
+import sc.protocol.responses.GamePreparedResponse
+import sc.protocol.responses.GamesPreparedResponse
 import sc.shared.SlotDescriptor
 
 class GameProtocolTest: WordSpec({
@@ -32,6 +35,35 @@ class GameProtocolTest: WordSpec({
             """.trimIndent()
         }
     }
+    PrepareGamesRequest::class.java.simpleName should {
+        "serialize" {
+            PrepareGamesRequest(listOf(PrepareGameRequest("testgame"), PrepareGameRequest("testgame", pause = true))) shouldSerializeTo """
+                 <prepareGames>
+                   <prepare gameType="testgame" pause="false">
+                     <slot displayName="Player1" canTimeout="true" reserved="true"/>
+                     <slot displayName="Player2" canTimeout="true" reserved="true"/>
+                   </prepare>
+                   <prepare gameType="testgame" pause="true">
+                     <slot displayName="Player1" canTimeout="true" reserved="true"/>
+                     <slot displayName="Player2" canTimeout="true" reserved="true"/>
+                   </prepare>
+                 </prepareGames>
+            """.trimIndent()
+        }
+        "answer with all prepared games" {
+            GamesPreparedResponse(listOf(GamePreparedResponse("r1", listOf("a", "b")), GamePreparedResponse("r2", listOf("c")))) shouldSerializeTo """
+                 <preparedGames>
+                   <prepared roomId="r1">
+                     <reservation>a</reservation>
+                     <reservation>b</reservation>
+                   </prepared>
+                   <prepared roomId="r2">
+                     <reservation>c</reservation>
+                   </prepared>
+                 </preparedGames>
+            """.trimIndent()
+        }
+    }
     JoinGameRequest::class.java.simpleName should {
         "serialize minimally" {
             JoinGameRequest(null) shouldSerializeTo "<join/>"
@@ -16,6 +16,7 @@ dependencies {
     implementation("ch.qos.logback", "logback-classic", "1.3.11") // Update to 1.4 with JDK upgrade
     
     runtimeOnly(project(":plugin"))
+    testImplementation(project(":plugin"))
     testRuntimeOnly("org.junit.jupiter:junit-jupiter-engine") // legacy java tests
 }
 
@@ -25,6 +26,9 @@ val isBeta: Boolean by project
 tasks {
     test {
         systemProperty("junit.jupiter.execution.timeout.default", "10 s") // legacy junit tests
+        arrayOf("loadtest", "loadtest.clients", "sc.threadModel").forEach { key ->
+            System.getProperty(key)?.let { systemProperty(key, it) }
+        }
     }
     
     val runnableDir = buildDir.resolve("runnable")
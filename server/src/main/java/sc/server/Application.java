@@ -5,6 +5,7 @@ import jargs.gnu.CmdLineParser.IllegalOptionValueException;
 import jargs.gnu.CmdLineParser.UnknownOptionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.ThreadModel;
 import sc.shared.SharedConfiguration;
 
 import java.io.File;
@@ -39,6 +40,8 @@ public final class Application {
     long start = System.currentTimeMillis();
 
     Configuration.loadServerProperties();
+    ThreadModel.setCurrent(Configuration.getThreadModel());
+    logger.info("Using {} threads", ThreadModel.getCurrent());
 
     final Lobby server = new Lobby();
     try {
@@ -2,6 +2,8 @@ package sc.server;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.ThreadModel;
+import sc.networking.clients.XStreamClient;
 import sc.shared.SharedConfiguration;
 
 import java.io.File;
@@ -27,9 +29,18 @@ public class Configuration {
   public static final String TURN_TO_LOAD = "turnToLoad";
   public static final String PLUGIN_PATH_DEFAULT_KEY = "./plugins";
   public static final String SAVE_REPLAY = "saveReplay";
+  public static final String REPLAY_DIRECTORY_KEY = "replayDirectory";
+  public static final String COMPRESS_REPLAYS_KEY = "compressReplays";
+  public static final String COMPACT_REPLAYS_KEY = "compactReplays";
   public static final String PAUSED = "paused";
   public static final String TIMEOUT = "timeout";
   public static final String LISTEN_LOCAL_KEY = "local";
+  public static final String THREAD_MODEL_KEY = "threadModel";
+  public static final String QUEUE_CAPACITY_KEY = "outboundQueueCapacity";
+  public static final String OVERFLOW_POLICY_KEY = "outboundOverflowPolicy";
+  public static final String ROOM_WORKERS_KEY = "roomWorkers";
+  public static final String WARMUP_GAMES_KEY = "warmupGames";
+  public static final String CHECKPOINT_DIRECTORY_KEY = "checkpointDirectory";
 
   public static final String PASSWORD_KEY = "password";
   public static final String PORT_KEY = "port";
@@ -70,6 +81,56 @@ public class Configuration {
     return get(PLUGIN_PATH_KEY, String.class, PLUGIN_PATH_DEFAULT_KEY);
   }
 
+  /** Thread model for client connections, timeouts and services, see {@link ThreadModel}. */
+  public static ThreadModel getThreadModel() {
+    return ThreadModel.parse(get(THREAD_MODEL_KEY, String.class, ThreadModel.getCurrent().name()));
+  }
+
+  /** Maximum number of packets waiting to be sent to a single client. */
+  public static int getQueueCapacity() {
+    return get(QUEUE_CAPACITY_KEY, Integer.class, XStreamClient.DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /** What to do when a client can't keep up, see {@link XStreamClient.OverflowPolicy}. */
+  public static XStreamClient.OverflowPolicy getOverflowPolicy() {
+    String policy = get(OVERFLOW_POLICY_KEY);
+    return policy == null ? XStreamClient.OverflowPolicy.DROP_MEMENTOS :
+        XStreamClient.OverflowPolicy.valueOf(policy.trim().toUpperCase());
+  }
+
+  /** Threads processing the events of the game rooms,
+   * 0 processes them on the thread receiving them, see {@link sc.server.gaming.RoomMailbox}. */
+  public static int getRoomWorkers() {
+    return get(ROOM_WORKERS_KEY, Integer.class, Runtime.getRuntime().availableProcessors());
+  }
+
+  /** Directory replays are saved to. */
+  public static String getReplayDirectory() {
+    return get(REPLAY_DIRECTORY_KEY, String.class, "replays");
+  }
+
+  /** Whether replays are saved gzip-compressed. */
+  public static boolean getCompressReplays() {
+    return get(COMPRESS_REPLAYS_KEY, Boolean.class, false);
+  }
+
+  /** Whether replays store moves instead of states where possible, see {@link sc.framework.CompactReplay}. */
+  public static boolean getCompactReplays() {
+    return get(COMPACT_REPLAYS_KEY, Boolean.class, false);
+  }
+
+  /** Synthetic games played per plugin on startup, see {@link sc.server.gaming.WarmUp}. */
+  public static int getWarmupGames() {
+    return get(WARMUP_GAMES_KEY, Integer.class, 0);
+  }
+
+  /** Directory to record running rooms in, so they are resumed after a restart, see {@link sc.server.gaming.RoomJournal}.
+   * @return null if rooms aren't recorded */
+  public static String getCheckpointDirectory() {
+    String directory = get(CHECKPOINT_DIRECTORY_KEY);
+    return directory == null || directory.isEmpty() ? null : directory;
+  }
+
   public static String getAdministrativePassword() {
     return get(PASSWORD_KEY);
   }
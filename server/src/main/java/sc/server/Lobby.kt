@@ -8,6 +8,7 @@ import sc.protocol.requests.*
 import sc.protocol.room.RoomPacket
 import sc.server.gaming.GameRoomManager
 import sc.server.gaming.ReservationManager
+import sc.server.gaming.WarmUp
 import sc.server.network.*
 import java.io.Closeable
 import java.io.IOException
@@ -16,16 +17,19 @@ import java.io.IOException
 class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
     val clientManager = ClientManager(this)
     
-    /** @see ClientManager.start */
+    /** Warms up the plugins if configured and restores interrupted rooms, then starts accepting clients.
+     * @see WarmUp
+     * @see restoreRooms
+     * @see ClientManager.start */
     @Throws(IOException::class)
     fun start() {
+        Configuration.getWarmupGames().takeIf { it > 0 }?.let { WarmUp(plugins).run(it) }
+        restoreRooms()
         clientManager.start()
     }
     
     private fun notifyObservers(packet: ProtocolPacket) =
-            clientManager.clients
-                    .filter { it.isAdministrator }
-                    .forEach { it.send(packet) }
+            clientManager.administrators.forEach { it.send(packet) }
     
     /** Handle requests or moves of clients.
      * @throws RescuableClientException if something goes wrong.
@@ -39,7 +43,7 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
                 val move = packet.data
                 if(move !is IMove)
                     throw GameRoomException("Received non-move packet: $packet")
-                room.onEvent(source, move)
+                room.onEvent(source, move, callback.receivedAt)
             }
             is JoinPreparedRoomRequest ->
                 ReservationManager.redeemReservationCode(source, packet.reservationCode)
@@ -58,6 +62,9 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
                     is PrepareGameRequest -> {
                         source.send(this.prepareGame(packet))
                     }
+                    is PrepareGamesRequest -> {
+                        source.send(this.prepareGames(packet))
+                    }
                     is ObservationRequest -> {
                         val room = this.findRoom(packet.roomId)
                         room.addObserver(source)
@@ -83,5 +90,9 @@ class Lobby: GameRoomManager(), Closeable, IClientRequestListener {
         callback.setProcessed()
     }
     
-    override fun close() = clientManager.close()
+    override fun close() {
+        // the rooms are recorded as they are, disconnecting the clients must not end them in the journal
+        journal?.close()
+        clientManager.close()
+    }
 }
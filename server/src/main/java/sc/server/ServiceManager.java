@@ -2,6 +2,7 @@ package sc.server;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import sc.framework.ThreadModel;
 
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -26,12 +27,10 @@ public abstract class ServiceManager {
   }
 
   private static synchronized Thread createService(String name, Runnable target, boolean daemon) {
-    logger.debug("Spawning thread for new service (name={}, daemon={})",
-            name, daemon);
+    logger.debug("Spawning thread for new service (name={}, daemon={}, model={})",
+            name, daemon, ThreadModel.getCurrent());
 
-    Thread thread = new Thread(target);
-    thread.setName(name);
-    thread.setDaemon(daemon);
+    Thread thread = ThreadModel.getCurrent().newThread(name, daemon, target);
     threads.add(thread);
     return thread;
   }
@@ -0,0 +1,46 @@
+package sc.server.gaming
+
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGamePlugin
+import sc.api.plugins.exceptions.PluginLoaderException
+import sc.shared.ScoreDefinition
+
+/** The game plugins available to the server, looked up by their [IGamePlugin.id].
+ * Plugins are loaded once instead of scanning the classpath for every new room. */
+class GamePluginRegistry(plugins: Iterator<IGamePlugin>) {
+    private val plugins = LinkedHashMap<String, IGamePlugin>()
+    private val scoreDefinitions = HashMap<String, ScoreDefinition>()
+
+    init {
+        plugins.forEach { plugin ->
+            // like IGamePlugin.loadPlugin, the first plugin found for an id wins
+            if(this.plugins.putIfAbsent(plugin.id, plugin) == null)
+                scoreDefinitions[plugin.id] = plugin.scoreDefinition
+        }
+        if(this.plugins.isEmpty())
+            throw PluginLoaderException("Could not find any game plugin")
+        logger.info("Loaded game plugins {}", this.plugins.keys)
+    }
+
+    /** Ids of all available plugins. */
+    val ids: Set<String>
+        get() = plugins.keys
+
+    /** @param gameType id of the plugin, if null return the first one
+     * @return The plugin with an id equal to [gameType]. */
+    fun getPlugin(gameType: String?): IGamePlugin =
+            (if(gameType == null) plugins.values.first() else plugins[gameType])
+            ?: throw PluginLoaderException("Could not find game of type '$gameType'")
+
+    /** @return the [ScoreDefinition] of the plugin for [gameType]. */
+    fun getScoreDefinition(gameType: String?): ScoreDefinition =
+            scoreDefinitions.getValue(getPlugin(gameType).id)
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(GamePluginRegistry::class.java)
+
+        /** Registry of the plugins on the classpath, loaded on first use. */
+        @JvmStatic
+        val default by lazy { GamePluginRegistry(IGamePlugin.loadPlugins()) }
+    }
+}
@@ -8,16 +8,19 @@ import sc.api.plugins.IMove;
 import sc.api.plugins.exceptions.GameException;
 import sc.api.plugins.exceptions.GameLogicException;
 import sc.api.plugins.exceptions.GameRoomException;
+import sc.api.plugins.exceptions.RescuableClientException;
 import sc.api.plugins.exceptions.TooManyPlayersException;
 import sc.api.plugins.host.IGameListener;
 import sc.framework.HelperMethods;
-import sc.framework.ReplayListener;
+import sc.framework.ReplayIndex;
+import sc.framework.ReplayWriter;
 import sc.framework.plugins.Pausable;
 import sc.framework.plugins.Player;
 import sc.networking.clients.IClient;
 import sc.networking.clients.XStreamClient;
 import sc.protocol.ProtocolPacket;
 import sc.protocol.RemovedFromGame;
+import sc.protocol.responses.ErrorPacket;
 import sc.protocol.responses.JoinedRoomResponse;
 import sc.protocol.responses.ObservationResponse;
 import sc.protocol.room.*;
@@ -27,11 +30,17 @@ import sc.shared.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * A wrapper for an actual <code>GameInstance</code>. GameInstances are provided
  * by the plugins. Additional mapping data (Client2Player) will be stored here.
+ * <p>
+ * Moves, timeouts and requests of administrators and observers are processed in order
+ * through the {@link RoomMailbox} of the room.
+ * Joining takes a slot right away, as its result is needed, but the game is started through the mailbox.
  */
 public class GameRoom implements IGameListener {
   private static final Logger logger = LoggerFactory.getLogger(GameRoom.class);
@@ -42,7 +51,14 @@ public class GameRoom implements IGameListener {
   private final List<PlayerSlot> playerSlots = new ArrayList<>(getMaximumPlayerCount());
   private GameStatus status = GameStatus.CREATED;
   private GameResult result;
-  private final ReplayListener<RoomPacket> replayListener = Boolean.parseBoolean(Configuration.get(Configuration.SAVE_REPLAY)) ? new ReplayListener<>() : null;
+  private final boolean saveReplay = Boolean.parseBoolean(Configuration.get(Configuration.SAVE_REPLAY));
+  /** Created with the first recorded message, as the file is named after the players. */
+  private ReplayWriter replay;
+  private File replayFile;
+  private volatile CompletableFuture<Void> replayClosed;
+  private final RoomMailbox mailbox;
+  /** Records the room to resume it after a restart, null if disabled. */
+  private final RoomJournal journal;
 
   public final IGameInstance game; // TODO make inaccessible
   public final List<IClient> observers = new ArrayList<>();
@@ -57,7 +73,10 @@ public class GameRoom implements IGameListener {
     this.gameRoomManager = gameRoomManager;
     this.scoreDefinition = scoreDefinition;
     this.game = game;
+    this.mailbox = new RoomMailbox(gameRoomManager.getRoomWorkers());
+    this.journal = gameRoomManager.getJournal();
     game.addGameListener(this);
+    game.setEventExecutor(mailbox);
   }
 
   /** Generate GameResult, set status to OVER and close the room. */
@@ -78,42 +97,58 @@ public class GameRoom implements IGameListener {
       logger.error("Failed to broadcast GameResult from " + results, t);
     }
 
-    saveReplay();
+    closeReplay();
+    if (journal != null)
+      journal.closed(id);
     destroy();
   }
 
+  /** Streams the message to the replay file if replays are enabled. */
   private void saveReplayMessage(ObservableRoomMessage message) {
-    if (replayListener != null)
-      replayListener.addMessage(createRoomPacket(message instanceof MementoMessage ? ((MementoMessage) message).clone() : message));
+    if (!saveReplay)
+      return;
+    if (replay == null) {
+      File file = getReplayFile();
+      logger.debug("Saving replay to {}", file);
+      boolean compact = Configuration.getCompactReplays();
+      // gzip streams can't be seeked and compact replays don't contain every state, so only plain replays are indexed
+      replay = compact || file.getName().endsWith(".gz") ?
+          new ReplayWriter(() -> openReplay(file), null, compact) :
+          new ReplayWriter(() -> openReplay(file), () -> openReplay(ReplayIndex.fileFor(file)));
+    }
+    // serialized right away, so the state may change further without a copy
+    replay.addMessage(createRoomPacket(message));
   }
 
-  /** If enabled, save the recorded replay to the default file. */
-  public void saveReplay() {
-    if (replayListener != null) {
-      try {
-        File file = createReplayFile();
-        logger.debug("Saving replay to {}", file);
-        saveReplay(new BufferedWriter(new FileWriter(file)));
-      } catch (IOException e) {
-        logger.error("Failed to save replay", e);
-      }
-    }
+  /** Finishes the replay in the background, see {@link #getReplayClosed()}. */
+  private void closeReplay() {
+    if (replay != null)
+      replayClosed = replay.close();
   }
 
-  /** Saves a replay to the writer, assuming replays have been enabled. */
-  public void saveReplay(Writer writer) throws IOException, NullPointerException {
-    replayListener.saveReplay(writer);
+  /** @return completes once the replay has been written, null if no replay was recorded or the game is not over */
+  public CompletableFuture<Void> getReplayClosed() {
+    return replayClosed;
   }
 
-  public File createReplayFile() throws IOException {
-    String fileName = HelperMethods.getReplayFilename(this.game.getPluginUUID(),
-        playerSlots.stream().map(it -> it.getPlayer().getDisplayName()).collect(Collectors.toList()));
+  /** @return the file the replay of this room is saved to, named after the game and its players */
+  public File getReplayFile() {
+    if (replayFile == null) {
+      String fileName = HelperMethods.getReplayFilename(this.game.getPluginUUID(),
+          playerSlots.stream().map(it -> it.getPlayer().getDisplayName()).collect(Collectors.toList()),
+          Configuration.getReplayDirectory());
+      if (Configuration.getCompressReplays())
+        fileName += ".gz";
+      replayFile = new File(fileName).getAbsoluteFile();
+    }
+    return replayFile;
+  }
 
-    File file = new File(fileName).getAbsoluteFile();
-    if (file.getParentFile().mkdirs() || file.getParentFile().exists())
-      if (file.createNewFile())
-        return file;
-    throw new IOException("Couldn't create replay file " + file);
+  private static OutputStream openReplay(File file) throws IOException {
+    if (!(file.getParentFile().mkdirs() || file.getParentFile().exists()) || !file.createNewFile())
+      throw new IOException("Couldn't create replay file " + file);
+    OutputStream out = new FileOutputStream(file);
+    return file.getName().endsWith(".gz") ? new GZIPOutputStream(out, 8192) : new BufferedOutputStream(out);
   }
 
   /** Send the given message to all Players and Observers in this room. */
@@ -127,9 +162,14 @@ public class GameRoom implements IGameListener {
     observers.forEach(observer -> observer.send(packet));
   }
 
-  /** Send Message to all registered Observers. */
+  /** Send Message to all registered Observers.
+   * States may be dropped for observers which can't keep up. */
   private void observerBroadcast(ObservableRoomMessage message) {
-    observers.forEach(observer -> observer.send(createRoomPacket(message)));
+    RoomPacket packet = createRoomPacket(message);
+    if (message instanceof MementoMessage)
+      observers.forEach(observer -> observer.sendDroppable(packet));
+    else
+      observers.forEach(observer -> observer.send(packet));
   }
 
   /** {@link GameRoom#broadcast(ProtocolPacket) Broadcast} a {@link RemovedFromGame} packet to everyone in this room. */
@@ -146,6 +186,8 @@ public class GameRoom implements IGameListener {
     if (!observersOnly) {
       sendStateToPlayers(data);
       saveReplayMessage(memento);
+      if (journal != null)
+        journal.checkpointState(id, data.clone());
     }
   }
 
@@ -192,7 +234,7 @@ public class GameRoom implements IGameListener {
   }
 
   /**
-   * If game is not prepared set attributes of PlayerSlot and start game if game is {@link #isReady() ready}.
+   * If game is not prepared set attributes of PlayerSlot and queue starting the game if it is {@link #isReady() ready}.
    *
    * @param openSlot PlayerSlot to fill
    * @param client   Client to fill PlayerSlot
@@ -200,7 +242,13 @@ public class GameRoom implements IGameListener {
   synchronized void fillSlot(PlayerSlot openSlot, Client client) {
     openSlot.setClient(client); // sets role of Slot as PlayerRole
     client.send(new JoinedRoomResponse(getId()));
-    startIfReady();
+    if (isReady())
+      mailbox.execute(this::startIfReady);
+  }
+
+  /** Whether a player may still join without a reservation. */
+  public synchronized boolean isOpen() {
+    return !isOver() && (playerSlots.size() < getMaximumPlayerCount() || playerSlots.stream().anyMatch(PlayerSlot::isFree));
   }
 
   /** Returns true if game is full of players. */
@@ -208,11 +256,11 @@ public class GameRoom implements IGameListener {
     return this.playerSlots.size() == getMaximumPlayerCount() && playerSlots.stream().noneMatch(PlayerSlot::isEmpty);
   }
 
-  /** Starts game if ready and not over. */
-  private void startIfReady() {
+  /** Starts game if ready and not started yet. */
+  private synchronized void startIfReady() {
     logger.debug("startIfReady called");
-    if (isOver()) {
-      logger.warn("Game already over: {}", game);
+    if (getStatus() != GameStatus.CREATED) {
+      logger.debug("Game already started: {}", game);
       return;
     }
 
@@ -227,6 +275,8 @@ public class GameRoom implements IGameListener {
 
   private synchronized void start() {
     logger.info("Starting {}", game);
+    // before the first state, which is only restored for known rooms
+    checkpoint(null);
     this.game.start();
     setStatus(GameStatus.ACTIVE);
   }
@@ -269,19 +319,60 @@ public class GameRoom implements IGameListener {
     return result;
   }
 
+  /** Recreates the slots of a restored room, reserving them with their previous codes. */
+  synchronized void restoreSlots(List<SlotCheckpoint> slots) {
+    for (SlotCheckpoint checkpoint : slots) {
+      PlayerSlot slot = openSlot();
+      Player player = slot.getPlayer();
+      player.setDisplayName(checkpoint.getDisplayName());
+      player.setCanTimeout(checkpoint.getCanTimeout());
+      if (checkpoint.getReservation() != null)
+        slot.reserve(checkpoint.getReservation());
+    }
+  }
+
   /**
-   * Execute received action.
+   * Records the setup of this room in the {@link RoomJournal} if enabled.
+   *
+   * @param state the current state if it isn't recorded otherwise, see {@link #onStateChanged}
+   */
+  synchronized void checkpoint(IGameState state) {
+    if (journal == null)
+      return;
+    List<SlotCheckpoint> slots = playerSlots.stream()
+        .map(slot -> new SlotCheckpoint(slot.getPlayer().getDisplayName(), slot.getPlayer().getCanTimeout(), slot.getReservation()))
+        .collect(Collectors.toList());
+    boolean paused = game instanceof Pausable && ((Pausable) game).isPaused();
+    journal.checkpoint(new RoomCheckpoint(id, game.getPluginUUID(), paused, slots, state == null ? null : state.clone()));
+  }
+
+  /**
+   * Queue received action for execution.
+   * Problems with it are reported to the source.
    *
    * @param source Client which caused the event
    * @param move   ProtocolMessage containing the action
+   * @param receivedAt {@link System#nanoTime()} at which the move was read from the network
    */
-  public synchronized void onEvent(Client source, IMove move) throws GameRoomException {
+  public void onEvent(Client source, IMove move, long receivedAt) {
+    mailbox.execute(() -> {
+      try {
+        processMove(source, move, receivedAt);
+      } catch (RescuableClientException e) {
+        logger.warn("Error on " + move, e);
+        source.send(new ErrorPacket(createRoomPacket(move), e.toString()));
+      }
+    });
+  }
+
+  private synchronized void processMove(Client source, IMove move, long receivedAt) throws GameRoomException {
+    gameRoomManager.getMoveQueueDelay().record(System.nanoTime() - receivedAt);
     if (isOver())
       throw new GameException("Game is already over, but got " + move);
 
     Player player = resolvePlayer(source);
     try {
-      game.onAction(player, move);
+      game.onAction(player, move, receivedAt);
     } catch (InvalidMoveException e) {
       final String error = String.format("Ungueltiger Zug von '%s'.\n%s", player.getDisplayName(), e);
       logger.error(error, e);
@@ -290,12 +381,12 @@ public class GameRoom implements IGameListener {
       player.notifyListeners(errorMessage);
       observerBroadcast(errorMessage);
       saveReplayMessage(errorMessage);
-      cancel();
+      stopGame();
     } catch (GameLogicException e) {
       logger.error("Error at " + move, e);
       player.setViolationReason(e.getMessage());
       player.notifyListeners(new ErrorMessage(move, e.getMessage()));
-      cancel();
+      stopGame();
     }
   }
 
@@ -322,18 +413,25 @@ public class GameRoom implements IGameListener {
 
   /** Add a Server {@link Client Client} in the role of an Observer. */
   public void addObserver(Client source) {
-    this.observers.add(source);
-    source.send(new ObservationResponse(getId()));
+    mailbox.execute(() -> {
+      synchronized (this) {
+        this.observers.add(source);
+        source.send(new ObservationResponse(getId()));
+      }
+    });
   }
 
   /**
-   * Pause or un-pause a game.
+   * Pause or un-pause a game once the pending events are processed.
    *
    * @param pause true if game is to be paused
-   *
-   * @return a RoomPacket with a GamePaused message or null if unsuccessful
    */
-  public synchronized void pause(boolean pause) {
+  public void pause(boolean pause) {
+    mailbox.execute(() -> applyPause(pause));
+  }
+
+  /** Pause or un-pause a game right away, for rooms nobody can access yet. */
+  synchronized void applyPause(boolean pause) {
     if (isOver()) {
       logger.warn("Cannot set pause to {} for already finished {}", pause, game);
       return;
@@ -355,6 +453,9 @@ public class GameRoom implements IGameListener {
 
     // if true, game is paused after current turn has finished
     pausableGame.setPaused(pause);
+    // rooms without slots are recorded once they are prepared or started
+    if (!playerSlots.isEmpty())
+      checkpoint(null);
   }
 
   /**
@@ -363,12 +464,16 @@ public class GameRoom implements IGameListener {
    * @param forced If true, the game will be forcibly started if starting
    *               conditions are not met. This should result in a GameOver.
    */
-  public synchronized void step(boolean forced) {
+  public void step(boolean forced) {
+    mailbox.execute(() -> processStep(forced));
+  }
+
+  private synchronized void processStep(boolean forced) {
     if (getStatus() == GameStatus.CREATED) {
       if (forced) {
         logger.warn("Forcing game start for {}", game);
         if(getClients().size() < 2)
-          cancel();
+          stopGame();
         else
           start();
       } else {
@@ -381,6 +486,10 @@ public class GameRoom implements IGameListener {
 
   /** Kick all players, destroy the game and remove it from the manager. */
   public void cancel() {
+    mailbox.execute(this::stopGame);
+  }
+
+  private synchronized void stopGame() {
     playerSlots.forEach(slot -> { if(slot.isEmpty()) slot.getPlayer().setLeft(XStreamClient.DisconnectCause.NOT_CONNECTED); });
     // this will invoke onGameOver and thus stop everything else
     this.game.stop();
@@ -409,10 +518,14 @@ public class GameRoom implements IGameListener {
 
   /** Remove a player and stop the game. */
   public void removePlayer(Player player, XStreamClient.DisconnectCause cause) {
-    logger.info("Removing {} from {}", player, this);
-    player.setLeft(cause);
-    if (!isOver())
-      cancel();
+    mailbox.execute(() -> {
+      synchronized (this) {
+        logger.info("Removing {} from {}", player, this);
+        player.setLeft(cause);
+        if (!isOver())
+          stopGame();
+      }
+    });
   }
 
   /** Get the saved {@link GameResult result}. */
@@ -10,7 +10,9 @@ import sc.api.plugins.exceptions.RescuableClientException;
 import sc.networking.InvalidScoreDefinitionException;
 import sc.networking.clients.GameLoaderClient;
 import sc.protocol.requests.PrepareGameRequest;
+import sc.protocol.requests.PrepareGamesRequest;
 import sc.protocol.responses.GamePreparedResponse;
+import sc.protocol.responses.GamesPreparedResponse;
 import sc.protocol.responses.RoomWasJoinedEvent;
 import sc.server.Configuration;
 import sc.server.network.Client;
@@ -20,24 +22,81 @@ import java.io.File;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 /**
  * The GameManager is responsible to keep all games alive and kill them once
  * they are done. Additionally the GameManager has to detect and kill games
  * which seem dead-locked or have caused a timeout.
+ * <p>
+ * Rooms which still accept players are queued per game type,
+ * so matching a player does not depend on the number of running games.
  */
 public class GameRoomManager {
-  private Map<String, GameRoom> rooms;
+  private final Map<String, GameRoom> rooms = new ConcurrentHashMap<>();
+
+  /** Rooms with free slots by game type, oldest first, each guarded by its own monitor. */
+  private final Map<String, Set<GameRoom>> openRooms = new ConcurrentHashMap<>();
+
+  private final QueueDelayStats moveQueueDelay = new QueueDelayStats();
+
+  /** Processes the events of the rooms of this manager, see {@link RoomMailbox}. */
+  private final Executor roomWorkers;
+
+  private final GamePluginRegistry plugins;
+
+  /** Null if rooms aren't recorded, see {@link Configuration#getCheckpointDirectory()}. */
+  private final RoomJournal journal;
 
   private static final Logger logger = LoggerFactory.getLogger(GameRoomManager.class);
 
   /** Default constructor, initializes rooms, loads available plugins. */
   public GameRoomManager() {
-    this.rooms = new HashMap<>();
+    this(GamePluginRegistry.getDefault());
+  }
+
+  /** @param plugins the game plugins rooms can be created for */
+  public GameRoomManager(GamePluginRegistry plugins) {
+    this(plugins, Configuration.getCheckpointDirectory() != null ? new RoomJournal(new File(Configuration.getCheckpointDirectory())) : null);
+  }
+
+  /**
+   * @param plugins the game plugins rooms can be created for
+   * @param journal records the running rooms, so they can be {@link #restoreRooms() restored}; null to disable
+   */
+  public GameRoomManager(GamePluginRegistry plugins, RoomJournal journal) {
+    this(plugins, journal, Configuration.getRoomWorkers() > 0 ? RoomMailbox.newWorkers(Configuration.getRoomWorkers()) : Runnable::run);
+  }
+
+  /**
+   * @param plugins the game plugins rooms can be created for
+   * @param journal records the running rooms, so they can be {@link #restoreRooms() restored}; null to disable
+   * @param roomWorkers processes the events of the rooms, see {@link RoomMailbox}
+   */
+  public GameRoomManager(GamePluginRegistry plugins, RoomJournal journal, Executor roomWorkers) {
+    this.plugins = plugins;
+    this.journal = journal;
+    this.roomWorkers = roomWorkers;
+  }
+
+  Executor getRoomWorkers() {
+    return roomWorkers;
+  }
+
+  public GamePluginRegistry getPlugins() {
+    return plugins;
+  }
+
+  public RoomJournal getJournal() {
+    return journal;
   }
 
   /** Adds an active GameRoom to this <code>GameManager</code> */
-  private synchronized void add(GameRoom room) {
+  private void add(GameRoom room) {
     logger.debug("Adding room with id {}", room.getId());
     this.rooms.put(room.getId(), room);
   }
@@ -49,8 +108,8 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if creation of game failed
    */
-  public synchronized GameRoom createGameRoom(String gameType) {
-    IGamePlugin plugin = IGamePlugin.loadPlugin(gameType);
+  public GameRoom createGameRoom(String gameType) {
+    IGamePlugin plugin = plugins.getPlugin(gameType);
     IGameInstance game;
 
     String gameFileLocation = Configuration.get(Configuration.GAMELOADFILE);
@@ -63,12 +122,12 @@ public class GameRoomManager {
       }
 
       logger.info("Loading game from file '{}' at turn {}", gameFile, turn);
-      game = plugin.createGameFromState(new GameLoaderClient(gameFile).getTurn(turn));
+      game = plugin.createGameFromState(GameLoaderClient.loadTurn(gameFile, turn));
     } else {
       game = plugin.createGame();
     }
 
-    return createGameRoom(plugin.getScoreDefinition(), game, false);
+    return createGameRoom(plugins.getScoreDefinition(plugin.getId()), game, false);
   }
 
   /** Create a new GameRoom with the given definitions. */
@@ -77,7 +136,7 @@ public class GameRoomManager {
     // pause room on JoinRoomRequest if specified in server.properties
     if (!prepared) {
       boolean paused = Boolean.parseBoolean(Configuration.get(Configuration.PAUSED));
-      room.pause(paused);
+      room.applyPause(paused);
     }
 
     this.add(room);
@@ -85,7 +144,7 @@ public class GameRoomManager {
     return room;
   }
 
-  private static synchronized String generateRoomId() {
+  private static String generateRoomId() {
     return UUID.randomUUID().toString();
   }
 
@@ -96,9 +155,10 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if game could not be created
    */
-  public synchronized RoomWasJoinedEvent createAndJoinGame(Client client, String gameType) {
+  public RoomWasJoinedEvent createAndJoinGame(Client client, String gameType) {
     GameRoom room = createGameRoom(gameType);
     if (room.join(client)) {
+      offerIfOpen(room);
       return roomJoined(room);
     }
     return null;
@@ -111,23 +171,59 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if client could not join room
    */
-  public synchronized RoomWasJoinedEvent joinOrCreateGame(Client client, String gameType)
+  public RoomWasJoinedEvent joinOrCreateGame(Client client, String gameType)
           throws RescuableClientException {
-    for (GameRoom gameRoom : getGames()) {
-      // TODO gameType isn't checked
-      if (gameRoom.join(client)) {
-        return roomJoined(gameRoom);
+    String type = plugins.getPlugin(gameType).getId();
+    Set<GameRoom> open = openRooms(type);
+    while (true) {
+      GameRoom room;
+      // only picking a room is serialized per game type, so that two players never open separate rooms
+      synchronized (open) {
+        Iterator<GameRoom> oldest = open.iterator();
+        if (oldest.hasNext()) {
+          room = oldest.next();
+        } else {
+          room = createGameRoom(type);
+          open.add(room);
+        }
+      }
+      // another player may have taken the last slot meanwhile, then the next room is tried
+      boolean joined = room.join(client);
+      if (!room.isOpen()) {
+        synchronized (open) {
+          open.remove(room);
+        }
+      }
+      if (joined)
+        return roomJoined(room);
+    }
+  }
+
+  private Set<GameRoom> openRooms(String gameType) {
+    return openRooms.computeIfAbsent(gameType, type -> new LinkedHashSet<>());
+  }
+
+  /** Makes the room available to {@link #joinOrCreateGame} if it has free slots. */
+  private void offerIfOpen(GameRoom room) {
+    if (room.isOpen()) {
+      Set<GameRoom> open = openRooms(room.game.getPluginUUID());
+      synchronized (open) {
+        open.add(room);
       }
     }
-    return createAndJoinGame(client, gameType);
   }
 
   protected RoomWasJoinedEvent roomJoined(GameRoom room) {
     return new RoomWasJoinedEvent(room.getId(), room.getClients().size());
   }
 
+  /** Time that moves waited on the server before their room processed them. */
+  public QueueDelayStats getMoveQueueDelay() {
+    return moveQueueDelay;
+  }
+
   /** Create an unmodifiable Collection of the {@link GameRoom GameRooms}. */
-  public synchronized Collection<GameRoom> getGames() {
+  public Collection<GameRoom> getGames() {
     return Collections.unmodifiableCollection(this.rooms.values());
   }
 
@@ -139,14 +235,34 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if game could not be created
    */
-  public synchronized GamePreparedResponse prepareGame(String gameType, boolean paused, SlotDescriptor[] descriptors, IGameState loadGameInfo) {
-    IGamePlugin plugin = IGamePlugin.loadPlugin(gameType);
+  public GamePreparedResponse prepareGame(String gameType, boolean paused, SlotDescriptor[] descriptors, IGameState loadGameInfo) {
+    PreparedRoom prepared = prepareRoom(gameType, paused, descriptors, loadGameInfo);
+    // slots without reservation can be taken by any player
+    offerIfOpen(prepared.room);
+    return prepared.response;
+  }
+
+  /** A room created by {@link #prepareRoom}, which is not yet offered to other players. */
+  private static final class PreparedRoom {
+    final GameRoom room;
+    final GamePreparedResponse response;
+
+    PreparedRoom(GameRoom room, GamePreparedResponse response) {
+      this.room = room;
+      this.response = response;
+    }
+  }
+
+  private PreparedRoom prepareRoom(String gameType, boolean paused, SlotDescriptor[] descriptors, IGameState loadGameInfo) {
+    IGamePlugin plugin = plugins.getPlugin(gameType);
     IGameInstance game = loadGameInfo != null ? plugin.createGameFromState(loadGameInfo) : plugin.createGame();
 
-    GameRoom room = createGameRoom(plugin.getScoreDefinition(), game, true);
-    room.pause(paused);
+    GameRoom room = createGameRoom(plugins.getScoreDefinition(plugin.getId()), game, true);
+    room.applyPause(paused);
 
-    return new GamePreparedResponse(room.getId(), room.reserveSlots(descriptors));
+    GamePreparedResponse response = new GamePreparedResponse(room.getId(), room.reserveSlots(descriptors));
+    room.checkpoint(loadGameInfo);
+    return new PreparedRoom(room, response);
   }
 
   /**
@@ -165,6 +281,94 @@ public class GameRoomManager {
     );
   }
 
+  /**
+   * Prepares all requested games at once, creating the rooms in parallel.
+   * If any game can't be prepared, the rooms prepared for the others are removed again.
+   *
+   * @return the prepared rooms in the order of the requests
+   *
+   * @throws RescuableClientException if a game could not be created
+   */
+  public GamesPreparedResponse prepareGames(PrepareGamesRequest request) throws RescuableClientException {
+    // rooms and reservations are independent, only the plugins and maps are shared
+    List<CompletableFuture<PreparedRoom>> futures = request.getGames().stream()
+        .map(game -> CompletableFuture.supplyAsync(() ->
+            prepareRoom(game.getGameType(), game.getPause(), game.getSlotDescriptors(), null)))
+        .collect(Collectors.toList());
+
+    // every game is finished before deciding, so no room is prepared after the rollback
+    List<PreparedRoom> prepared = new ArrayList<>();
+    RuntimeException failure = null;
+    for (CompletableFuture<PreparedRoom> future : futures) {
+      try {
+        prepared.add(future.join());
+      } catch (CompletionException e) {
+        if (failure == null)
+          failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+
+    if (failure != null) {
+      logger.warn("Failed to prepare {} games, removing the {} already prepared", futures.size(), prepared.size());
+      for (PreparedRoom room : prepared) {
+        remove(room.room);
+        if (journal != null)
+          journal.closed(room.room.getId());
+        room.response.getReservations().forEach(ReservationManager::freeReservation);
+      }
+      throw failure;
+    }
+
+    // only offered once the whole batch exists, so nobody joins a room that is rolled back
+    prepared.forEach(room -> offerIfOpen(room.room));
+    return new GamesPreparedResponse(prepared.stream().map(room -> room.response).collect(Collectors.toList()));
+  }
+
+  /**
+   * Recreates the rooms which were running when the server stopped, see {@link RoomJournal}.
+   * Their slots are reserved again with the previous codes,
+   * so the players can continue with a {@link sc.protocol.requests.JoinPreparedRoomRequest}.
+   * Slots which had been joined without a reservation are open for any player.
+   * Has to be called before any room is created.
+   *
+   * @return the restored rooms
+   */
+  public List<GameRoom> restoreRooms() {
+    List<GameRoom> restored = new ArrayList<>();
+    if (journal == null)
+      return restored;
+    List<RoomCheckpoint> checkpoints;
+    try {
+      checkpoints = journal.restore();
+    } catch (RuntimeException e) {
+      logger.error("Failed to read room journal in " + journal.getDirectory(), e);
+      return restored;
+    }
+    for (RoomCheckpoint checkpoint : checkpoints) {
+      try {
+        restored.add(restoreRoom(checkpoint));
+      } catch (RuntimeException e) {
+        logger.error("Failed to restore room " + checkpoint.getRoomId(), e);
+      }
+    }
+    logger.info("Restored {} of {} rooms from {}", restored.size(), checkpoints.size(), journal.getDirectory());
+    return restored;
+  }
+
+  private GameRoom restoreRoom(RoomCheckpoint checkpoint) {
+    IGamePlugin plugin = plugins.getPlugin(checkpoint.getGameType());
+    IGameState state = checkpoint.getState();
+    IGameInstance game = state != null ? plugin.createGameFromState(state) : plugin.createGame();
+
+    GameRoom room = new GameRoom(checkpoint.getRoomId(), this, plugins.getScoreDefinition(plugin.getId()), game);
+    if (checkpoint.getPaused())
+      room.applyPause(true);
+    room.restoreSlots(checkpoint.getSlots());
+    this.add(room);
+    offerIfOpen(room);
+    return room;
+  }
+
   /**
    * @param roomId String Id of room to be found
    *
@@ -172,7 +376,7 @@ public class GameRoomManager {
    *
    * @throws RescuableClientException if no room could be found
    */
-  public synchronized GameRoom findRoom(String roomId) throws RescuableClientException {
+  public GameRoom findRoom(String roomId) throws RescuableClientException {
     GameRoom room = this.rooms.get(roomId);
 
     if (room == null) {
@@ -183,8 +387,14 @@ public class GameRoomManager {
   }
 
   /** Remove specified room from this manager. */
-  public synchronized void remove(GameRoom gameRoom) {
+  public void remove(GameRoom gameRoom) {
     this.rooms.remove(gameRoom.getId());
+    Set<GameRoom> open = openRooms.get(gameRoom.game.getPluginUUID());
+    if (open != null) {
+      synchronized (open) {
+        open.remove(gameRoom);
+      }
+    }
   }
 
 }
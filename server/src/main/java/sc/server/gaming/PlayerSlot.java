@@ -18,6 +18,8 @@ public class PlayerSlot implements IPlayerListener, IClientListener {
   private Player player;
   private final GameRoom room;
   private boolean reserved;
+  /** Code of the reservation, kept after it was redeemed. */
+  private String reservation;
 
   public PlayerSlot(@NotNull GameRoom room) {
     this.room = room;
@@ -39,14 +41,30 @@ public class PlayerSlot implements IPlayerListener, IClientListener {
     return this.reserved;
   }
 
+  public String getReservation() {
+    return this.reservation;
+  }
+
   public synchronized String reserve() {
+    return reserve(null);
+  }
+
+  /**
+   * Reserve this slot.
+   *
+   * @param code the reservation code to use, e.g. when restoring a room, or null to generate one
+   *
+   * @return the reservation code
+   */
+  public synchronized String reserve(String code) {
     if (isReserved())
       throw new IllegalStateException("Slot already reserved.");
     if (!isEmpty())
       throw new IllegalStateException("This slot is already occupied.");
 
+    this.reservation = code == null ? ReservationManager.reserve(this) : ReservationManager.reserve(this, code);
     this.reserved = true;
-    return ReservationManager.reserve(this);
+    return this.reservation;
   }
 
   public void setClient(Client client) {
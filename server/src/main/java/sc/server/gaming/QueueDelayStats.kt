@@ -0,0 +1,32 @@
+package sc.server.gaming
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.LongAccumulator
+import java.util.concurrent.atomic.LongAdder
+
+/** Accumulates how long received packets waited on the server
+ * between being read from the network and being processed. */
+class QueueDelayStats {
+    private val packets = LongAdder()
+    private val totalNanos = LongAdder()
+    private val maxNanos = LongAccumulator({ a, b -> maxOf(a, b) }, 0)
+
+    fun record(delayNanos: Long) {
+        packets.increment()
+        totalNanos.add(delayNanos)
+        maxNanos.accumulate(delayNanos)
+    }
+
+    /** Number of recorded packets. */
+    val count: Long
+        get() = packets.sum()
+
+    val averageMillis: Double
+        get() = packets.sum().let { if(it == 0L) 0.0 else totalNanos.sum().toDouble() / it / TimeUnit.MILLISECONDS.toNanos(1) }
+
+    val maxMillis: Double
+        get() = maxNanos.get().toDouble() / TimeUnit.MILLISECONDS.toNanos(1)
+
+    override fun toString() =
+            "QueueDelayStats(count=$count, average=%.3fms, max=%.3fms)".format(averageMillis, maxMillis)
+}
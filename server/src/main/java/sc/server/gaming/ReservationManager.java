@@ -49,10 +49,25 @@ public final class ReservationManager {
    * @throws RuntimeException if the slot is already reserved
    */
   public synchronized static String reserve(PlayerSlot playerSlot) {
+    return reserve(playerSlot, generateUniqueId());
+  }
+
+  /**
+   * Reserve a specific slot with a known code, e.g. to restore a reservation after a restart.
+   *
+   * @param playerSlot the slot, that is supposed to be reserved
+   * @param key        the reservation code
+   *
+   * @return the reservation code
+   *
+   * @throws RuntimeException if the slot or the code is already reserved
+   */
+  public synchronized static String reserve(PlayerSlot playerSlot, String key) {
     if (reservations.containsValue(playerSlot))
       throw new RuntimeException("This slot is already reserved.");
+    if (reservations.containsKey(key))
+      throw new RuntimeException("Reservation " + key + " is already in use.");
 
-    String key = generateUniqueId();
     reservations.put(key, playerSlot);
     return key;
   }
@@ -0,0 +1,201 @@
+package sc.server.gaming
+
+import com.thoughtworks.xstream.XStream
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGameState
+import sc.framework.ThreadModel
+import sc.networking.XStreamProvider
+import java.io.BufferedOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+
+/** A slot of a [RoomCheckpoint], reserved again with the same code on restore. */
+data class SlotCheckpoint(
+        val displayName: String,
+        val canTimeout: Boolean,
+        /** Reservation code the slot was filled with, null if it was joined without one. */
+        val reservation: String?,
+)
+
+/** Everything needed to recreate a room after a restart. */
+data class RoomCheckpoint(
+        val roomId: String,
+        val gameType: String,
+        val paused: Boolean,
+        val slots: List<SlotCheckpoint>,
+        /** Latest state of the game, null if it didn't change since the last checkpoint. */
+        val state: IGameState?,
+)
+
+/** Journal entry for a new state of a room. */
+data class StateCheckpoint(val roomId: String, val state: IGameState)
+
+/** Journal entry for a room which doesn't need to be restored anymore. */
+data class RoomClosed(val roomId: String)
+
+/** Append-only journal of the running rooms in [directory], so they can be restored after a restart.
+ *
+ * Only what changed is appended: the setup of a room with [checkpoint], each new state with [checkpointState]
+ * and the end of the game with [closed]. Entries are serialized and written on a background thread.
+ * States which pile up before being written are coalesced, so a slow disk only reduces how many states are kept.
+ * An entry is written as its length followed by its XML, thus a torn entry at the end is simply dropped.
+ * States are written unredacted, as the game has to continue with what is hidden from the players.
+ *
+ * On [restore], the journal is compacted to one entry per running room.
+ */
+class RoomJournal @JvmOverloads constructor(
+        val directory: File,
+        private val xStream: XStream = XStreamProvider.sharedPluginXStream,
+) {
+    private val file = File(directory, FILE_NAME)
+
+    /** Writes the entries one after another. */
+    private val io: ExecutorService = Executors.newSingleThreadExecutor { task ->
+        ThreadModel.current.newThread("RoomJournal", true, task)
+    }
+
+    /** States waiting to be written by room, see [checkpointState]. */
+    private val pendingStates = ConcurrentHashMap<String, IGameState>()
+
+    /** Only accessed from [io]. */
+    private var out: DataOutputStream? = null
+    private var failed = false
+    @Volatile
+    private var closed = false
+
+    /** Records the setup of a room, replacing any previous one.
+     * A state of the checkpoint must not be modified afterwards. */
+    fun checkpoint(checkpoint: RoomCheckpoint) =
+            submit { write(checkpoint) }
+
+    /** Records a new state of the room, which must not be modified afterwards. */
+    fun checkpointState(roomId: String, state: IGameState) {
+        // only the first pending state schedules a write, later ones replace it
+        if(pendingStates.put(roomId, state) == null)
+            submit { pendingStates.remove(roomId)?.let { write(StateCheckpoint(roomId, it)) } }
+    }
+
+    /** Records that the room is over and must not be restored. */
+    fun closed(roomId: String) =
+            submit { write(RoomClosed(roomId)) }
+
+    /** Reads the rooms which were still running and compacts the journal to them.
+     * Has to be called before anything is written to this journal.
+     * @return the rooms in the order they were created */
+    fun restore(): List<RoomCheckpoint> =
+            CompletableFuture.supplyAsync({
+                val rooms = read()
+                compact(rooms)
+                rooms
+            }, io).join()
+
+    /** Writes the pending entries and stops recording, so shutting the rooms down afterwards does not close them. */
+    fun close() {
+        if(closed)
+            return
+        closed = true
+        io.execute {
+            try {
+                out?.close()
+            } catch(e: IOException) {
+                logger.warn("Failed to close room journal", e)
+            }
+        }
+        io.shutdown()
+        if(!io.awaitTermination(10, TimeUnit.SECONDS))
+            logger.warn("Room journal did not finish writing within 10 seconds")
+    }
+
+    private fun submit(task: () -> Unit) {
+        try {
+            if(!closed)
+                io.execute(task)
+        } catch(e: RejectedExecutionException) {
+            // closed concurrently
+        }
+    }
+
+    private fun write(entry: Any) {
+        if(failed)
+            return
+        try {
+            val xml = XStreamProvider.toUnredactedXML(xStream, entry).toByteArray(Charsets.UTF_8)
+            val out = out ?: openJournal()
+            out.writeInt(xml.size)
+            out.write(xml)
+            // an entry is only useful once it left the process
+            out.flush()
+        } catch(e: Exception) {
+            failed = true
+            logger.error("Failed to write room journal, rooms can't be restored after a restart", e)
+        }
+    }
+
+    private fun openJournal(): DataOutputStream {
+        if(!(directory.mkdirs() || directory.isDirectory))
+            throw IOException("Couldn't create checkpoint directory $directory")
+        return DataOutputStream(BufferedOutputStream(FileOutputStream(file, true))).also { out = it }
+    }
+
+    private fun read(): List<RoomCheckpoint> {
+        if(!file.isFile)
+            return emptyList()
+        val rooms = LinkedHashMap<String, RoomCheckpoint>()
+        DataInputStream(file.inputStream().buffered()).use { input ->
+            while(true) {
+                val xml = try {
+                    ByteArray(input.readInt()).also { input.readFully(it) }
+                } catch(e: EOFException) {
+                    // either the end of the journal or an entry which was cut off by a crash
+                    break
+                }
+                val entry = try {
+                    xStream.fromXML(String(xml, Charsets.UTF_8))
+                } catch(e: Exception) {
+                    logger.warn("Skipping unreadable room journal entry: {}", e.toString())
+                    continue
+                }
+                when(entry) {
+                    is RoomCheckpoint -> rooms[entry.roomId] = entry.copy(state = entry.state ?: rooms[entry.roomId]?.state)
+                    is StateCheckpoint -> rooms[entry.roomId]?.let { rooms[entry.roomId] = it.copy(state = entry.state) }
+                    is RoomClosed -> rooms.remove(entry.roomId)
+                    else -> logger.warn("Unknown room journal entry: {}", entry)
+                }
+            }
+        }
+        return rooms.values.toList()
+    }
+
+    /** Replaces the journal by one entry per room, so it doesn't grow across restarts. */
+    private fun compact(rooms: List<RoomCheckpoint>) {
+        if(rooms.isEmpty() && !file.exists())
+            return
+        val compacted = File(directory, "$FILE_NAME.tmp")
+        DataOutputStream(BufferedOutputStream(FileOutputStream(compacted))).use { out ->
+            rooms.forEach { room ->
+                val xml = XStreamProvider.toUnredactedXML(xStream, room).toByteArray(Charsets.UTF_8)
+                out.writeInt(xml.size)
+                out.write(xml)
+            }
+        }
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(RoomJournal::class.java)
+
+        const val FILE_NAME = "rooms.journal"
+    }
+}
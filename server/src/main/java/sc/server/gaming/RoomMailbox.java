@@ -0,0 +1,79 @@
+package sc.server.gaming;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import sc.framework.ThreadModel;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes the events of a single {@link GameRoom} one after another.
+ * The events of all rooms share a pool of workers,
+ * so rooms run in parallel while the threads delivering the events never wait for the game logic.
+ * Events submitted while processing an event are queued behind it instead of running reentrantly.
+ */
+public final class RoomMailbox implements Executor {
+  private static final Logger logger = LoggerFactory.getLogger(RoomMailbox.class);
+
+  /** Number of events a room processes before giving other rooms a turn. */
+  private static final int BATCH_SIZE = 32;
+
+  /** @return a pool of workers for the mailboxes of many rooms, whose threads end when idle */
+  public static ExecutorService newWorkers(int threads) {
+    AtomicInteger counter = new AtomicInteger();
+    ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(),
+        task -> ThreadModel.getCurrent().newThread("GameRoom-Worker-" + counter.incrementAndGet(), true, task));
+    workers.allowCoreThreadTimeOut(true);
+    return workers;
+  }
+
+  private final Executor workers;
+  private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  /** @param workers executor the events are processed on, a direct executor processes them on the submitting thread */
+  public RoomMailbox(Executor workers) {
+    this.workers = workers;
+  }
+
+  @Override
+  public void execute(Runnable event) {
+    events.add(event);
+    schedule();
+  }
+
+  /** @return number of events waiting to be processed */
+  public int getPending() {
+    return events.size();
+  }
+
+  private void schedule() {
+    if (scheduled.compareAndSet(false, true))
+      workers.execute(this::drain);
+  }
+
+  private void drain() {
+    try {
+      Runnable event;
+      for (int processed = 0; processed < BATCH_SIZE && (event = events.poll()) != null; processed++) {
+        try {
+          event.run();
+        } catch (Throwable t) {
+          logger.error("Failed to process room event", t);
+        }
+      }
+    } finally {
+      scheduled.set(false);
+    }
+    if (!events.isEmpty())
+      schedule();
+  }
+}
@@ -0,0 +1,125 @@
+package sc.server.gaming
+
+import com.thoughtworks.xstream.XStream
+import org.slf4j.LoggerFactory
+import sc.api.plugins.IGamePlugin
+import sc.api.plugins.IGameState
+import sc.api.plugins.IMove
+import sc.api.plugins.host.IGameListener
+import sc.framework.plugins.Player
+import sc.networking.XStreamProvider
+import sc.protocol.room.MementoMessage
+import sc.protocol.room.MoveRequest
+import sc.protocol.room.RoomMessage
+import sc.protocol.room.RoomPacket
+import sc.shared.PlayerScore
+import java.lang.management.ManagementFactory
+import javax.management.ObjectName
+import kotlin.random.Random
+
+/** Plays synthetic games in-process before the server accepts connections,
+ * so that move calculation and serialization are already compiled when the first real games run.
+ * Moves are chosen randomly from [IGameState.moveIterator]
+ * and every state and move passes through XStream like it would on the network. */
+class WarmUp(
+        private val plugins: GamePluginRegistry,
+        private val xStream: XStream = XStreamProvider.sharedPluginXStream,
+        private val random: Random = Random.Default,
+) {
+    /** What a [run] did. */
+    data class Stats(val games: Int, val moves: Int, val millis: Long)
+
+    /** Plays [gamesPerPlugin] games of every plugin and logs how long that took.
+     * Failing games are logged and skipped, they should never prevent the server from starting.
+     * @return the games that were played to the end */
+    fun run(gamesPerPlugin: Int): Stats {
+        val compiledBefore = compiledMethods()
+        val compilationBefore = compilationMillis()
+        val start = System.nanoTime()
+        var games = 0
+        var moves = 0
+        plugins.ids.forEach { id ->
+            val plugin = plugins.getPlugin(id)
+            repeat(gamesPerPlugin) {
+                try {
+                    moves += playGame(plugin)
+                    games++
+                } catch(e: Exception) {
+                    logger.warn("Warm-up game of {} failed", id, e)
+                }
+            }
+        }
+        val stats = Stats(games, moves, (System.nanoTime() - start) / 1_000_000)
+        logger.info("Warm-up played {} games with {} moves in {}ms, JIT compiled methods {} -> {} in {}ms",
+                stats.games, stats.moves, stats.millis,
+                compiledBefore ?: "?", compiledMethods() ?: "?",
+                compilationMillis()?.minus(compilationBefore ?: 0) ?: "?")
+        return stats
+    }
+
+    /** Plays a single game of [plugin] until it is over or no move is available.
+     * @return the number of moves played */
+    fun playGame(plugin: IGamePlugin): Int {
+        val game = plugin.createGame()
+        var state: IGameState? = null
+        var requested: Player? = null
+        var over = false
+        game.addGameListener(object: IGameListener {
+            override fun onGameOver(results: Map<Player, PlayerScore>) {
+                over = true
+            }
+
+            override fun onStateChanged(data: IGameState, observersOnly: Boolean) {
+                state = (roundTrip(MementoMessage(data, null)) as MementoMessage).state
+            }
+        })
+        repeat(2) {
+            val player = game.onPlayerJoined()
+            player.addPlayerListener { message -> if(message is MoveRequest) requested = player }
+        }
+
+        game.start()
+        var moves = 0
+        while(!over) {
+            val player = requested ?: break
+            requested = null
+            val move = state?.moveIterator()?.asSequence()?.toList()?.randomOrNull(random)
+            if(move == null || moves >= MOVE_LIMIT) {
+                game.stop()
+                break
+            }
+            game.onAction(player, roundTrip(move) as IMove)
+            moves++
+        }
+        return moves
+    }
+
+    private fun roundTrip(message: RoomMessage): RoomMessage =
+            (xStream.fromXML(xStream.toXML(RoomPacket(ROOM_ID, message))) as RoomPacket).data
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(WarmUp::class.java)
+
+        private const val ROOM_ID = "warm-up"
+        /** Ends games that don't finish by themselves. */
+        private const val MOVE_LIMIT = 1000
+
+        private fun compilationMillis(): Long? =
+                ManagementFactory.getCompilationMXBean()
+                        ?.takeIf { it.isCompilationTimeMonitoringSupported }
+                        ?.totalCompilationTime
+
+        /** Counts the methods in the code cache via the HotSpot diagnostic command `Compiler.codelist`.
+         * @return null if the JVM doesn't provide it */
+        private fun compiledMethods(): Int? =
+                try {
+                    val codelist = ManagementFactory.getPlatformMBeanServer().invoke(
+                            ObjectName("com.sun.management:type=DiagnosticCommand"), "compilerCodelist",
+                            arrayOf<Any?>(null), arrayOf(Array<String>::class.java.name)) as String
+                    codelist.lineSequence().count { it.isNotBlank() }
+                } catch(e: Exception) {
+                    logger.debug("Could not count compiled methods", e)
+                    null
+                }
+    }
+}
@@ -1,11 +1,13 @@
 package sc.server.network;
 
+import com.thoughtworks.xstream.XStream;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import sc.api.plugins.exceptions.RescuableClientException;
 import sc.networking.INetworkInterface;
 import sc.networking.UnprocessedPacketException;
+import sc.networking.XStreamProvider;
 import sc.networking.clients.IClient;
 import sc.networking.clients.XStreamClient;
 import sc.protocol.ProtocolPacket;
@@ -16,6 +18,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Handles server-side communication with connected clients.
@@ -26,13 +29,20 @@ import java.util.List;
 public class Client extends XStreamClient implements IClient {
   private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
-  protected boolean isAdministrator = false;
+  protected volatile boolean isAdministrator = false;
   private boolean notifiedOnDisconnect = false;
   private IClientRequestListener requestHandler = null;
-  private final List<IClientListener> clientListeners = new ArrayList<>();
+  private final List<IClientListener> clientListeners = new CopyOnWriteArrayList<>();
 
   public Client(INetworkInterface networkInterface) throws IOException {
-    super(networkInterface);
+    this(networkInterface, XStreamProvider.getSharedPluginXStream());
+  }
+
+  /** @param xStream configured instance to (de)serialize packets with, which is not modified */
+  public Client(INetworkInterface networkInterface, XStream xStream) throws IOException {
+    // answer in the format the client chose
+    super(networkInterface, Configuration.getQueueCapacity(), null, xStream);
+    setOverflowPolicy(Configuration.getOverflowPolicy());
   }
 
   public void setRequestHandler(IClientRequestListener handler) {
@@ -69,6 +79,8 @@ public class Client extends XStreamClient implements IClient {
       if (!isAdministrator()) {
         isAdministrator = true;
         logger.info("Client authenticated as administrator");
+        for (IClientListener listener : clientListeners)
+          listener.onAdministratorAuthenticated(this);
       } else {
         logger.warn("Client tried to authenticate as administrator twice.");
       }
@@ -98,6 +110,11 @@ public class Client extends XStreamClient implements IClient {
   /** Forward received package to listeners. */
   @Override
   protected void onObject(@NotNull ProtocolPacket message) throws UnprocessedPacketException {
+    onObject(message, System.nanoTime());
+  }
+
+  @Override
+  protected void onObject(@NotNull ProtocolPacket message, long receivedAt) throws UnprocessedPacketException {
     /*
      * NOTE that this method is called in the receiver thread.
      * Messages should only be passed to listeners.
@@ -105,7 +122,7 @@ public class Client extends XStreamClient implements IClient {
      */
     Collection<RescuableClientException> errors = new ArrayList<>();
 
-    PacketCallback callback = new PacketCallback(message);
+    PacketCallback callback = new PacketCallback(message, receivedAt);
 
     try {
       requestHandler.onRequest(this, callback);
@@ -5,18 +5,28 @@ import sc.networking.clients.XStreamClient
 import sc.server.ServiceManager
 import java.io.Closeable
 import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
 
 /** The ClientManager serves as a lookup table for all active connections.  */
 class ClientManager(private val requestHandler: IClientRequestListener) : Runnable, IClientListener, Closeable {
 
-    /** List of all XStreamClients. */
-    val clients = ArrayList<Client>()
+    private val connected: MutableSet<Client> = ConcurrentHashMap.newKeySet()
+    private val admins: MutableSet<Client> = ConcurrentHashMap.newKeySet()
+
+    /** Snapshot of all connected clients. */
+    val clients: List<Client>
+        get() = connected.toList()
+
+    /** Connected clients with administrative rights. */
+    val administrators: Collection<Client>
+        get() = admins
 
     /** Listener waits for new clients to connect. */
     private val clientListener = NewClientListener()
 
     private var running: Boolean = false
     private var serviceThread: Thread? = null
+    private var statsThread: Thread? = null
 
     init {
         running = false
@@ -29,7 +39,9 @@ class ClientManager(private val requestHandler: IClientRequestListener) : Runnab
      * *(only used by tests and addAll())*
      */
     fun add(newClient: Client) {
-        clients.add(newClient)
+        connected.add(newClient)
+        if(newClient.isAdministrator)
+            admins.add(newClient)
         newClient.addClientListener(this)
         newClient.setRequestHandler(requestHandler)
         newClient.start()
@@ -69,29 +81,73 @@ class ClientManager(private val requestHandler: IClientRequestListener) : Runnab
         clientListener.start()
         if(serviceThread == null)
             serviceThread = ServiceManager.createService(javaClass.simpleName, this).apply { start() }
+        if(statsThread == null)
+            statsThread = ServiceManager.createService("OutboundQueueStats", ::logOutboundQueueStats).apply { start() }
+    }
+
+    /** Logs the [outboundQueueStats] every [STATS_INTERVAL] millis while packets are queued or being dropped. */
+    private fun logOutboundQueueStats() {
+        var dropped = 0L
+        try {
+            while(!Thread.interrupted()) {
+                Thread.sleep(STATS_INTERVAL)
+                val stats = outboundQueueStats()
+                if(stats.queued > 0 || stats.dropped != dropped)
+                    logger.info("Outbound queues: {}", stats)
+                dropped = stats.dropped
+            }
+        } catch(_: InterruptedException) {
+        }
     }
 
     override fun close() {
         running = false
         serviceThread?.interrupt()
+        statsThread?.interrupt()
         clientListener.close()
-        while (clients.size > 0) {
-            try {
-                clients.removeAt(clients.lastIndex).stop()
-            } catch (ignored: ArrayIndexOutOfBoundsException) {
-                // Client was removed concurrently
+        connected.forEach { client ->
+            // whoever removes the client stops it
+            if(connected.remove(client)) {
+                admins.remove(client)
+                client.stop()
             }
         }
     }
 
+    /** Outbound queue metrics over all connected clients. */
+    fun outboundQueueStats(): OutboundQueueStats {
+        val current = connected.toTypedArray()
+        return OutboundQueueStats(
+                current.sumOf { it.queueDepth },
+                current.maxOfOrNull { it.maxQueueDepth } ?: 0,
+                current.sumOf { it.droppedPackets })
+    }
+
     /** Remove disconnected client. */
     override fun onClientDisconnected(source: Client, cause: XStreamClient.DisconnectCause) {
         logger.info("Removing client $source from client manager")
-        clients.remove(source)
+        connected.remove(source)
+        admins.remove(source)
+    }
+
+    override fun onAdministratorAuthenticated(source: Client) {
+        admins.add(source)
+        // the client may have disconnected meanwhile
+        if(source !in connected)
+            admins.remove(source)
     }
 
     companion object {
         private val logger = LoggerFactory.getLogger(ClientManager::class.java)
+        /** Millis between two logs of the [outboundQueueStats]. */
+        const val STATS_INTERVAL = 60_000L
     }
 
 }
+
+/** Summary of the outbound queues of the connected clients.
+ * @property queued packets currently waiting to be written
+ * @property maxDepth highest depth a single queue reached
+ * @property dropped intermediate states dropped for slow observers
+ */
+data class OutboundQueueStats(val queued: Int, val maxDepth: Int, val dropped: Long)
@@ -6,6 +6,9 @@ import sc.networking.clients.XStreamClient.DisconnectCause
 interface IClientListener {
     /** Invoked when this client disconnected.  */
     fun onClientDisconnected(source: Client, cause: DisconnectCause)
+    
+    /** Invoked when this client gained administrative rights. */
+    fun onAdministratorAuthenticated(source: Client) {}
 }
 
 interface IClientRequestListener {
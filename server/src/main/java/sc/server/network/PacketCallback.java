@@ -2,16 +2,27 @@ package sc.server.network;
 
 public class PacketCallback {
   private final Object packet;
+  private final long receivedAt;
   private boolean processed = false;
 
   public PacketCallback(Object packet) {
+    this(packet, System.nanoTime());
+  }
+
+  /** @param receivedAt {@link System#nanoTime()} at which the packet was read from the network */
+  public PacketCallback(Object packet, long receivedAt) {
     this.packet = packet;
+    this.receivedAt = receivedAt;
   }
 
   public Object getPacket() {
     return this.packet;
   }
 
+  public long getReceivedAt() {
+    return this.receivedAt;
+  }
+
   public boolean isProcessed() {
     return this.processed;
   }
@@ -3,9 +3,12 @@ package sc.server.gaming
 import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.style.FunSpec
 import io.kotest.matchers.*
+import io.kotest.matchers.nulls.shouldNotBeNull
+import sc.framework.ReplayReader
 import sc.networking.clients.GameLoaderClient
 import sc.server.plugins.TestGameState
 import java.io.File
+import java.util.stream.Collectors
 import java.util.zip.GZIPOutputStream
 
 @Suppress("BlockingMethodInNonBlockingContext")
@@ -31,4 +34,29 @@ class GameLoaderTest: FunSpec({
             }
         }
     }
+    context("ReplayReader reads replay from") {
+        val tmpfile = File.createTempFile("test-replay", ".xml.gz")
+        GZIPOutputStream(tmpfile.outputStream(), true).also { out ->
+            minimalReplay.byteInputStream().copyTo(out)
+            out.close()
+        }
+        listOf(
+                "String" to { ReplayReader(minimalReplay.byteInputStream()) },
+                "GZip File" to { ReplayReader(tmpfile) }
+        ).forEach { (clue, reader) ->
+            test(clue) {
+                reader().use { replay ->
+                    replay.result shouldBe null
+                    replay.states().toList() shouldBe listOf(TestGameState())
+                    replay.hasNext() shouldBe false
+                    replay.result.shouldNotBeNull().isRegular shouldBe true
+                }
+            }
+        }
+        test("files in parallel") {
+            List(20) { tmpfile }.parallelStream()
+                    .map { ReplayReader(it).use { replay -> replay.states().count() } }
+                    .collect(Collectors.toList()) shouldBe List(20) { 1 }
+        }
+    }
 })
\ No newline at end of file
@@ -0,0 +1,28 @@
+package sc.server.gaming
+
+import io.kotest.assertions.throwables.shouldThrow
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.types.*
+import sc.api.plugins.exceptions.PluginLoaderException
+import sc.server.plugins.TestPlugin
+
+class GamePluginRegistryTest: FunSpec({
+    val plugin = TestPlugin()
+    val registry = GamePluginRegistry(listOf(plugin, TestPlugin()).iterator())
+
+    test("looks plugins up by id") {
+        registry.ids shouldBe setOf(TestPlugin.TEST_PLUGIN_UUID)
+        registry.getPlugin(TestPlugin.TEST_PLUGIN_UUID) shouldBeSameInstanceAs plugin
+        registry.getPlugin(null) shouldBeSameInstanceAs plugin
+        registry.getScoreDefinition(TestPlugin.TEST_PLUGIN_UUID) shouldBeSameInstanceAs plugin.scoreDefinition
+        shouldThrow<PluginLoaderException> { registry.getPlugin("unknown") }
+    }
+    test("requires a plugin") {
+        shouldThrow<PluginLoaderException> { GamePluginRegistry(emptyList<TestPlugin>().iterator()) }
+    }
+    test("default registry is loaded once from the classpath") {
+        GamePluginRegistry.default shouldBeSameInstanceAs GamePluginRegistry.default
+        GamePluginRegistry.default.getPlugin(null).id shouldBe TestPlugin.TEST_PLUGIN_UUID
+    }
+})
@@ -0,0 +1,50 @@
+package sc.server.gaming
+
+import io.kotest.core.spec.style.WordSpec
+import io.kotest.matchers.*
+import io.kotest.inspectors.forAll
+import io.kotest.matchers.collections.*
+import org.slf4j.LoggerFactory
+import sc.protocol.ProtocolPacket
+import sc.protocol.requests.PrepareGameRequest
+import sc.server.helpers.StringNetworkInterface
+import sc.server.network.Client
+import sc.server.plugins.TestPlugin
+import kotlin.system.measureNanoTime
+
+/** Discards all packets, so that thousands of clients need no threads. */
+private class SilentClient: Client(StringNetworkInterface("")) {
+    override fun send(packet: ProtocolPacket) {}
+    override fun sendDroppable(packet: ProtocolPacket) {}
+}
+
+/** Matches players while many games are running.
+ * Only runs when the system property `loadtest` is set,
+ * the number of running games can be adjusted via `loadtest.rooms`. */
+class GameRoomManagerLoadTest: WordSpec({
+    val logger = LoggerFactory.getLogger(GameRoomManagerLoadTest::class.java)
+    val enabled = System.getProperty("loadtest") != null
+    val roomCount = System.getProperty("loadtest.rooms")?.toInt() ?: 10_000
+    val players = 2000
+
+    "A GameRoomManager" should {
+        "pair players regardless of $roomCount running games".config(enabled = enabled) {
+            val manager = GameRoomManager()
+            val prepareTime = measureNanoTime {
+                repeat(roomCount) { manager.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID)) }
+            }
+            manager.games shouldHaveSize roomCount
+
+            val clients = List(players) { SilentClient() }
+            val joinTime = measureNanoTime {
+                clients.forEach { manager.joinOrCreateGame(it, TestPlugin.TEST_PLUGIN_UUID) }
+            }
+            logger.info("Prepared {} rooms in {}ms, joined {} players in {}ms ({}µs each)",
+                    roomCount, prepareTime / 1_000_000, players, joinTime / 1_000_000, joinTime / 1000 / players)
+
+            val matched = manager.games.filter { it.clients.isNotEmpty() }
+            matched shouldHaveSize players / 2
+            matched.forAll { it.clients shouldHaveSize 2 }
+        }
+    }
+})
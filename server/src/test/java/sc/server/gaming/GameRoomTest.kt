@@ -1,20 +1,29 @@
 package sc.server.gaming
 
+import io.kotest.assertions.throwables.shouldThrow
 import io.kotest.core.spec.IsolationMode
 import io.kotest.core.spec.style.WordSpec
 import io.kotest.matchers.*
 import io.kotest.matchers.collections.*
 import io.kotest.matchers.maps.shouldContainExactly
+import io.kotest.matchers.nulls.shouldNotBeNull
 import org.junit.jupiter.api.assertThrows
+import sc.api.plugins.exceptions.PluginLoaderException
+import sc.framework.ReplayIndex
+import sc.networking.clients.GameLoaderClient
 import sc.protocol.requests.PrepareGameRequest
+import sc.protocol.requests.PrepareGamesRequest
 import sc.server.Configuration
 import sc.server.helpers.StringNetworkInterface
 import sc.server.network.Client
+import sc.server.network.await
+import sc.server.plugins.TestGameState
 import sc.server.plugins.TestPlugin
 import sc.shared.PlayerScore
 import sc.shared.ScoreCause
 import sc.shared.SlotDescriptor
-import java.io.StringWriter
+import java.nio.file.Files
+import java.util.concurrent.TimeUnit
 
 val minimalReplay = """
     <protocol>
@@ -69,8 +78,14 @@ val minimalReplay = """
 class GameRoomTest: WordSpec({
     isolationMode = IsolationMode.SingleInstance
     val client = Client(StringNetworkInterface("")).apply { start() }
+    val replayDirectory = Files.createTempDirectory("replays").toFile()
+    afterSpec {
+        Configuration.set(Configuration.SAVE_REPLAY, false)
+        replayDirectory.deleteRecursively()
+    }
     "A GameRoomManager" should {
         val manager = GameRoomManager()
+        Configuration.set(Configuration.REPLAY_DIRECTORY_KEY, replayDirectory.path)
         Configuration.set(Configuration.SAVE_REPLAY, true)
         "create a game when a player joins" {
             manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).playerCount shouldBe 1
@@ -79,6 +94,7 @@ class GameRoomTest: WordSpec({
         val room = manager.games.single()
         "add a second player to the existing game" {
             manager.joinOrCreateGame(client, TestPlugin.TEST_PLUGIN_UUID).playerCount shouldBe 2
+            await("game started") { room.status shouldBe GameRoom.GameStatus.ACTIVE }
         }
         "return correct scores on game over" {
             val playersScores = room.game.players.associateWith { PlayerScore(ScoreCause.REGULAR, "Game terminated", 0, it.team.index, 2) }
@@ -89,9 +105,15 @@ class GameRoomTest: WordSpec({
             room.isOver shouldBe true
         }
         "save a correct replay" {
-            val replayWriter = StringWriter()
-            room.saveReplay(replayWriter)
-            replayWriter.toString() shouldBe minimalReplay.replace("some-id", room.id)
+            room.replayClosed.get(5, TimeUnit.SECONDS)
+            room.replayFile.readText() shouldBe minimalReplay.replace("some-id", room.id)
+        }
+        "index the states of the replay" {
+            val index = ReplayIndex.open(room.replayFile).shouldNotBeNull()
+            index.size shouldBe 1
+            index.getTurn(0) shouldBe TestGameState()
+            GameLoaderClient.loadTurn(room.replayFile, -1) shouldBe TestGameState()
+            shouldThrow<NoSuchElementException> { index.getTurn(1) }
         }
     }
     "A GameRoom with prepared reservations" should {
@@ -132,4 +154,24 @@ class GameRoomTest: WordSpec({
             room.game.players[1].displayName shouldBe player2name
         }
     }
+    "A batch of prepared games" should {
+        val manager = GameRoomManager()
+        "create a room per game in order" {
+            val requests = (1..20).map { PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID, descriptor2 = SlotDescriptor("opponent$it")) }
+            val prepared = manager.prepareGames(PrepareGamesRequest(requests)).games
+            prepared shouldHaveSize 20
+            manager.games shouldHaveSize 20
+            prepared.forEachIndexed { index, response ->
+                response.reservations shouldHaveSize 2
+                manager.findRoom(response.roomId).slots[1].player.displayName shouldBe "opponent${index + 1}"
+            }
+            prepared.map { it.roomId }.toSet() shouldHaveSize 20
+        }
+        "remove the prepared rooms if a game can't be prepared" {
+            shouldThrow<PluginLoaderException> {
+                manager.prepareGames(PrepareGamesRequest(listOf(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID), PrepareGameRequest("unknown"))))
+            }
+            manager.games shouldHaveSize 20
+        }
+    }
 })
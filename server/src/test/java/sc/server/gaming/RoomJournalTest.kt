@@ -0,0 +1,85 @@
+package sc.server.gaming
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.collections.*
+import io.kotest.matchers.longs.shouldBeGreaterThan
+import io.kotest.matchers.nulls.shouldNotBeNull
+import io.kotest.matchers.types.shouldBeInstanceOf
+import sc.plugin2024.Game
+import sc.plugin2024.GameState
+import sc.plugin2024.util.GamePlugin
+import sc.server.helpers.StringNetworkInterface
+import sc.server.network.Client
+import sc.server.plugins.TestGame
+import sc.server.plugins.TestGameState
+import sc.server.plugins.TestPlugin
+import sc.shared.SlotDescriptor
+import java.io.File
+import java.nio.file.Files
+
+class RoomJournalTest: FunSpec({
+    val directory = Files.createTempDirectory("checkpoints").toFile()
+    afterSpec { directory.deleteRecursively() }
+    val descriptors = arrayOf(SlotDescriptor("one"), SlotDescriptor("two", false))
+
+    val journal = RoomJournal(directory)
+    val manager = GameRoomManager(GamePluginRegistry.default, journal)
+    val prepared = manager.prepareGame(TestPlugin.TEST_PLUGIN_UUID, true, descriptors, TestGameState(3))
+    val over = manager.prepareGame(TestPlugin.TEST_PLUGIN_UUID, false, descriptors, null)
+
+    test("records the latest state and drops finished rooms") {
+        journal.checkpointState(prepared.roomId, TestGameState(4))
+        journal.checkpointState(prepared.roomId, TestGameState(5, 1))
+        journal.closed(over.roomId)
+        journal.close()
+
+        val checkpoint = RoomJournal(directory).restore().single()
+        checkpoint.roomId shouldBe prepared.roomId
+        checkpoint.paused shouldBe true
+        checkpoint.state shouldBe TestGameState(5, 1)
+        checkpoint.slots shouldBe listOf(
+                SlotCheckpoint("one", true, prepared.reservations[0]),
+                SlotCheckpoint("two", false, prepared.reservations[1]))
+        File(directory, RoomJournal.FILE_NAME).length() shouldBeGreaterThan 0L
+    }
+    test("restores rooms with their reservations") {
+        // the reservations of the stopped server are gone
+        (prepared.reservations + over.reservations).forEach { ReservationManager.freeReservation(it) }
+
+        val restartedJournal = RoomJournal(directory)
+        val restored = GameRoomManager(GamePluginRegistry.default, restartedJournal).restoreRooms().single()
+        restored.id shouldBe prepared.roomId
+        val game = restored.game.shouldBeInstanceOf<TestGame>()
+        game.currentState shouldBe TestGameState(5, 1)
+        game.isPaused shouldBe true
+        restored.slots.map { it.player.displayName } shouldBe listOf("one", "two")
+        restored.slots.map { it.reservation } shouldBe prepared.reservations
+
+        ReservationManager.redeemReservationCode(Client(StringNetworkInterface("")).apply { start() }, prepared.reservations[0])
+        restored.clients shouldHaveSize 1
+        restartedJournal.close()
+    }
+    test("compacts the journal to the running rooms") {
+        RoomJournal(directory).restore().single().state.shouldNotBeNull()
+    }
+    test("restores the hidden segments of a board") {
+        val boardDirectory = Files.createTempDirectory("checkpoints").toFile()
+        val state = GameState()
+        repeat(6) { state.performMoveDirectly(state.getSensibleMoves().first()) }
+
+        val boardJournal = RoomJournal(boardDirectory)
+        val room = GameRoomManager(GamePluginRegistry.default, boardJournal).prepareGame(GamePlugin.PLUGIN_ID, true, descriptors, state)
+        boardJournal.close()
+        room.reservations.forEach { ReservationManager.freeReservation(it) }
+
+        val restartedJournal = RoomJournal(boardDirectory)
+        val restored = GameRoomManager(GamePluginRegistry.default, restartedJournal).restoreRooms().single()
+        val restoredState = restored.game.shouldBeInstanceOf<Game>().currentState
+        restoredState.board.segments shouldBe state.board.segments
+        restoredState.board shouldBe state.board
+        restoredState shouldBe state
+        restartedJournal.close()
+        boardDirectory.deleteRecursively()
+    }
+})
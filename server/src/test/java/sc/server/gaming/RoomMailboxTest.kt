@@ -0,0 +1,41 @@
+package sc.server.gaming
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.booleans.*
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class RoomMailboxTest: FunSpec({
+    val workers = RoomMailbox.newWorkers(4)
+    test("events of a room are processed in order, one at a time") {
+        val rooms = List(20) { RoomMailbox(workers) }
+        val processed = rooms.map { Collections.synchronizedList(ArrayList<Int>()) }
+        val active = rooms.map { AtomicInteger() }
+        val done = CountDownLatch(rooms.size * 500)
+        repeat(500) { event ->
+            rooms.forEachIndexed { index, mailbox ->
+                mailbox.execute {
+                    active[index].incrementAndGet() shouldBe 1
+                    processed[index].add(event)
+                    active[index].decrementAndGet()
+                    done.countDown()
+                }
+            }
+        }
+        done.await(10, TimeUnit.SECONDS).shouldBeTrue()
+        processed.forEach { it shouldBe (0 until 500).toList() }
+    }
+    test("events submitted while processing are queued behind") {
+        val mailbox = RoomMailbox(Runnable::run)
+        val order = ArrayList<String>()
+        mailbox.execute {
+            mailbox.execute { order.add("inner") }
+            order.add("outer")
+        }
+        order shouldBe listOf("outer", "inner")
+        mailbox.pending shouldBe 0
+    }
+})
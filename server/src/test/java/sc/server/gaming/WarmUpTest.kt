@@ -0,0 +1,19 @@
+package sc.server.gaming
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import sc.server.plugins.TestPlugin
+
+class WarmUpTest: FunSpec({
+    val registry = GamePluginRegistry(listOf(TestPlugin()).iterator())
+
+    test("plays a game until it is over") {
+        // TestGame ends after the second round
+        WarmUp(registry).playGame(TestPlugin()) shouldBe 4
+    }
+    test("runs without clients") {
+        val stats = WarmUp(registry).run(3)
+        stats.games shouldBe 3
+        stats.moves shouldBe 12
+    }
+})
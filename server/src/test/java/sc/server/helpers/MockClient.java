@@ -1,5 +1,6 @@
 package sc.server.helpers;
 
+import com.thoughtworks.xstream.XStream;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +24,10 @@ public class MockClient extends Client {
     super(stringInterface);
   }
 
+  public MockClient(StringNetworkInterface stringInterface, XStream xStream) throws IOException {
+    super(stringInterface, xStream);
+  }
+
   public MockClient() throws IOException {
     this(new StringNetworkInterface("<protocol>"));
   }
@@ -35,6 +40,11 @@ public class MockClient extends Client {
     this.outgoingMessages.add(parsedPacket);
   }
 
+  @Override
+  public void sendDroppable(ProtocolPacket packet) {
+    send(packet);
+  }
+
   public Object popMessage() {
     return this.outgoingMessages.poll();
   }
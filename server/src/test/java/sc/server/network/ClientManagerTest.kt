@@ -0,0 +1,43 @@
+package sc.server.network
+
+import io.kotest.core.spec.style.FunSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.collections.*
+import sc.server.Configuration
+import sc.server.Lobby
+import sc.server.helpers.MockClient
+import kotlin.concurrent.thread
+
+class ClientManagerTest: FunSpec({
+    Configuration.set(Configuration.PASSWORD_KEY, PASSWORD)
+    val manager = Lobby().clientManager
+    afterSpec { manager.close() }
+
+    test("administrators are indexed separately") {
+        val player = MockClient().also { manager.add(it) }
+        val admin = MockClient().also { manager.add(it) }
+        admin.authenticate(PASSWORD)
+        manager.clients shouldContainExactlyInAnyOrder listOf(player, admin)
+        manager.administrators shouldContainExactly listOf(admin)
+
+        admin.stop()
+        await("admin removed") {
+            manager.administrators.shouldBeEmpty()
+            manager.clients shouldContainExactly listOf(player)
+        }
+        player.stop()
+    }
+
+    test("concurrent connects and disconnects") {
+        List(8) {
+            thread {
+                repeat(50) {
+                    val client = MockClient()
+                    manager.add(client)
+                    client.stop()
+                }
+            }
+        }.forEach { it.join() }
+        await("all clients removed") { manager.clients.shouldBeEmpty() }
+    }
+})
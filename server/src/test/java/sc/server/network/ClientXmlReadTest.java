@@ -1,13 +1,16 @@
 package sc.server.network;
 
+import com.thoughtworks.xstream.XStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.Timeout;
-import sc.networking.clients.XStreamClient;
+import sc.networking.XStreamProvider;
 import sc.server.helpers.ExamplePacket;
 import sc.server.helpers.MockClient;
 import sc.server.helpers.StringNetworkInterface;
+import sc.server.helpers.TestHelper;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,8 +32,7 @@ public class ClientXmlReadTest {
     StringNetworkInterface stringInterface = new StringNetworkInterface(
             "<protocol>\n<example />");
     StupidClientListener clientListener = new StupidClientListener();
-    MockClient client = new MockClient(stringInterface);
-    aliasExamplePacket(client);
+    MockClient client = new MockClient(stringInterface, exampleXStream());
 
     client.setRequestHandler(clientListener);
     client.start();
@@ -43,18 +45,19 @@ public class ClientXmlReadTest {
   @Test
   public void clientSendPacketTest() throws IOException {
     StringNetworkInterface stringInterface = new StringNetworkInterface(EMPTY_OBJECT_STREAM);
-    Client client = new Client(stringInterface);
-    aliasExamplePacket(client);
+    Client client = new Client(stringInterface, exampleXStream());
 
     client.start();
     client.send(new ExamplePacket());
     // TODO this attempts to close a closed stream: client.close();
-    String data = stringInterface.readData();
-    assertEquals("<protocol>\n  <example/>", data);
+    TestHelper.INSTANCE.assertEqualsWithTimeout("<protocol>\n  <example/>", stringInterface::readData, 1, TimeUnit.SECONDS);
   }
 
-  private void aliasExamplePacket(XStreamClient client) {
-    client.getXStream().alias("example", ExamplePacket.class);
+  /** A separate instance, so the alias doesn't leak into other tests via the shared one. */
+  private static XStream exampleXStream() {
+    XStream xStream = XStreamProvider.loadPluginXStream();
+    xStream.alias("example", ExamplePacket.class);
+    return xStream;
   }
 
 }
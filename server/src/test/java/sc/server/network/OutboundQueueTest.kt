@@ -0,0 +1,128 @@
+package sc.server.network
+
+import io.kotest.core.spec.style.WordSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.string.shouldContain
+import io.kotest.matchers.string.shouldNotContain
+import sc.networking.INetworkInterface
+import sc.networking.clients.XStreamClient
+import sc.networking.clients.XStreamClient.DisconnectCause
+import sc.networking.clients.XStreamClient.OverflowPolicy
+import sc.protocol.ProtocolPacket
+import sc.protocol.room.GamePaused
+import sc.protocol.room.RoomPacket
+import sc.server.helpers.NonEndingByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.InputStream
+import java.io.OutputStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/** Network on which the send thread is held up until [open] is called, simulating a slow consumer. */
+class GatedNetworkInterface: INetworkInterface {
+    private val gate = CountDownLatch(1)
+    private val data = ByteArrayOutputStream()
+    private val inputStream = NonEndingByteArrayInputStream("<protocol>".toByteArray())
+    private val outputStream = object: OutputStream() {
+        override fun write(b: Int) = write(byteArrayOf(b.toByte()), 0, 1)
+        override fun write(b: ByteArray, off: Int, len: Int) {
+            if (Thread.currentThread().name.startsWith("XStream-Send"))
+                gate.await(5, TimeUnit.SECONDS)
+            data.write(b, off, len)
+        }
+    }
+
+    fun open() = gate.countDown()
+    fun readData() = data.toString()
+
+    override fun getInputStream(): InputStream = inputStream
+    override fun getOutputStream(): OutputStream = outputStream
+    override fun close() = inputStream.close()
+}
+
+class QueueClient(network: INetworkInterface, capacity: Int, policy: OverflowPolicy): XStreamClient(network, capacity) {
+    init {
+        overflowPolicy = policy
+        start()
+    }
+    override fun onObject(message: ProtocolPacket) {}
+}
+
+class OutboundQueueTest: WordSpec({
+    fun state(room: String) = RoomPacket(room, GamePaused(false))
+
+    "A client with a full outbound queue" When {
+        "dropping mementos" should {
+            val network = GatedNetworkInterface()
+            val client = QueueClient(network, 2, OverflowPolicy.DROP_MEMENTOS)
+            client.sendDroppable(state("a"))
+            await("first packet is being written") { client.queueDepth shouldBe 0 }
+            "replace outdated states of the same room" {
+                client.sendDroppable(state("a"))
+                client.sendDroppable(state("b"))
+                client.sendDroppable(state("a"))
+                client.droppedPackets shouldBe 1
+                client.queueDepth shouldBe 2
+                client.maxQueueDepth shouldBe 2
+            }
+            "deliver the remaining packets" {
+                network.open()
+                await { client.queueDepth shouldBe 0 }
+                await { network.readData().split("<room").size shouldBe 4 }
+                client.close()
+            }
+        }
+        "dropping mementos of different rooms" should {
+            val network = GatedNetworkInterface()
+            val client = QueueClient(network, 2, OverflowPolicy.DROP_MEMENTOS)
+            client.sendDroppable(state("a"))
+            await("first packet is being written") { client.queueDepth shouldBe 0 }
+            "drop the oldest state" {
+                client.sendDroppable(state("b"))
+                client.sendDroppable(state("c"))
+                client.sendDroppable(state("d"))
+                client.droppedPackets shouldBe 1
+                client.queueDepth shouldBe 2
+                network.open()
+                await { client.queueDepth shouldBe 0 }
+                await { network.readData().split("<room").size shouldBe 4 }
+                network.readData() shouldNotContain "roomId=\"b\""
+                network.readData() shouldContain "roomId=\"d\""
+                client.close()
+            }
+        }
+        "dropping mementos with a stalled consumer" should {
+            val network = GatedNetworkInterface()
+            val client = QueueClient(network, 1, OverflowPolicy.DROP_MEMENTOS)
+            client.send(state("a"))
+            await("first packet is being written") { client.queueDepth shouldBe 0 }
+            client.send(state("b"))
+            "drop a new state when no older one is queued" {
+                client.sendDroppable(state("c"))
+                client.droppedPackets shouldBe 1
+                client.queueDepth shouldBe 1
+                client.isClosed shouldBe false
+            }
+            "disconnect instead of waiting with other packets" {
+                client.send(state("c"))
+                await { client.isClosed shouldBe true }
+                client.disconnectCause shouldBe DisconnectCause.SLOW_CONSUMER
+                network.open()
+            }
+        }
+        "disconnecting" should {
+            val network = GatedNetworkInterface()
+            val client = QueueClient(network, 1, OverflowPolicy.DISCONNECT)
+            client.send(state("a"))
+            await("first packet is being written") { client.queueDepth shouldBe 0 }
+            "drop the slow consumer" {
+                client.send(state("a"))
+                client.isClosed shouldBe false
+                client.send(state("a"))
+                await { client.isClosed shouldBe true }
+                client.disconnectCause shouldBe DisconnectCause.SLOW_CONSUMER
+                network.open()
+            }
+        }
+    }
+})
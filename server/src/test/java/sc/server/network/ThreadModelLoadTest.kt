@@ -0,0 +1,82 @@
+package sc.server.network
+
+import io.kotest.core.spec.style.WordSpec
+import io.kotest.matchers.collections.*
+import io.kotest.matchers.*
+import org.slf4j.LoggerFactory
+import sc.framework.ThreadModel
+import java.io.File
+import java.lang.management.ManagementFactory
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.time.Duration.Companion.seconds
+
+/** Compares the overhead of the [ThreadModel]s with many connected clients.
+ * Only runs when the system property `loadtest` is set,
+ * the number of clients can be adjusted via `loadtest.clients`. */
+class ThreadModelLoadTest: WordSpec({
+    val logger = LoggerFactory.getLogger(ThreadModelLoadTest::class.java)
+    val enabled = System.getProperty("loadtest") != null
+    val clientCount = System.getProperty("loadtest.clients")?.toInt() ?: 1000
+    val rounds = 5
+
+    ThreadModel.values().forEach { model ->
+        "A Lobby on $model threads" should {
+            "serve $clientCount clients".config(enabled = enabled) {
+                val previous = ThreadModel.current
+                ThreadModel.current = model
+                try {
+                    TestLobby().use { testLobby ->
+                        val before = Sample.take()
+                        val responses = AtomicInteger()
+                        val clients = List(clientCount) { testLobby.connectClient() }
+                        clients.forEach { it.authenticate("wrong", { responses.incrementAndGet() }) }
+                        await("all clients connected", 60.seconds) {
+                            testLobby.lobby.clientManager.clients shouldHaveSize clientCount
+                        }
+                        val connected = Sample.take()
+                        repeat(rounds - 1) { clients.forEach { it.authenticate("wrong") } }
+                        await("all responses received", 60.seconds) {
+                            responses.get() shouldBe clientCount * rounds
+                        }
+                        val after = Sample.take()
+                        logger.info("{} threads with {} clients: {} more heap, {} more platform threads, {} context switches for {} requests",
+                                model, clientCount,
+                                "${(connected.heap - before.heap) / 1024} KiB",
+                                connected.threads - before.threads,
+                                if (before.contextSwitches < 0) "unknown" else after.contextSwitches - connected.contextSwitches,
+                                clientCount * (rounds - 1))
+                        clients.forEach { it.stop() }
+                    }
+                } finally {
+                    ThreadModel.current = previous
+                }
+            }
+        }
+    }
+})
+
+private data class Sample(val heap: Long, val threads: Int, val contextSwitches: Long) {
+    companion object {
+        fun take(): Sample {
+            System.gc()
+            val runtime = Runtime.getRuntime()
+            return Sample(
+                    runtime.totalMemory() - runtime.freeMemory(),
+                    ManagementFactory.getThreadMXBean().threadCount,
+                    contextSwitches())
+        }
+
+        /** Sums up the context switches of all live threads of this process,
+         * only available on Linux. */
+        private fun contextSwitches(): Long =
+                File("/proc/self/task").listFiles()?.sumOf { task ->
+                    try {
+                        File(task, "status").readLines()
+                                .filter { it.contains("ctxt_switches:") }
+                                .sumOf { it.substringAfter(':').trim().toLong() }
+                    } catch (e: Exception) {
+                        0L
+                    }
+                } ?: -1
+    }
+}
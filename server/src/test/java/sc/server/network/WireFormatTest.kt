@@ -0,0 +1,28 @@
+package sc.server.network
+
+import io.kotest.core.spec.style.WordSpec
+import io.kotest.matchers.*
+import io.kotest.matchers.collections.*
+import sc.networking.WireFormat
+import sc.networking.clients.LobbyClient
+import sc.protocol.ResponsePacket
+import sc.protocol.requests.PrepareGameRequest
+import sc.protocol.responses.GamePreparedResponse
+import sc.server.client.MessageListener
+import sc.server.plugins.TestPlugin
+
+class WireFormatTest: WordSpec({
+    "A Lobby" When {
+        val testLobby = autoClose(TestLobby())
+        "connected to a binary client" should {
+            val listener = MessageListener<ResponsePacket>()
+            val client = autoClose(LobbyClient("localhost", testLobby.serverPort, WireFormat.BINARY))
+            val admin = client.authenticate(PASSWORD, listener::addMessage)
+            "answer in the binary format" {
+                admin.prepareGame(PrepareGameRequest(TestPlugin.TEST_PLUGIN_UUID))
+                listener.waitForMessage(GamePreparedResponse::class).reservations shouldHaveSize 2
+                testLobby.lobby.clientManager.clients.single().wireFormat shouldBe WireFormat.BINARY
+            }
+        }
+    }
+})
@@ -21,7 +21,7 @@ data class TestGameState(
             intArrayOf(currentTeam.index, turn)
     
     override fun moveIterator(): Iterator<IMove> =
-            throw NotImplementedError("TestGame has no Moves")
+            listOf(TestMove(turn), TestMove(turn + 1)).iterator()
     
     override val round get() = turn / 2
     
@@ -24,6 +24,8 @@ public abstract class AbstractRoleTest {
   public void setup() throws IOException {
     // Random PortAllocation
     Configuration.set(Configuration.PORT_KEY, "0");
+    // process room events synchronously to inspect the results right away
+    Configuration.set(Configuration.ROOM_WORKERS_KEY, "0");
 
     lobby = new Lobby();
     clientMgr = this.lobby.getClientManager();